@@ -2,7 +2,7 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 
 /** The Blob class that stores all the information of the file
  * that is being tracked by Gitlet.
@@ -15,28 +15,34 @@ public class Blob implements Serializable {
     /** Hash ID of the file. */
     private String _id;
 
-    /** Contents stored in this file as a string. */
-    private String _content;
-
-    /** Construct a blob.
+    /** Construct a blob out of the file FILENAME, streaming its contents
+     *  into the object store.
      * @param filename
      * */
     public Blob(String filename) {
         _filename = filename;
-        File file = new File(filename);
-        _content = Utils.readContentsAsString(file);
-        _id = hash();
+        _id = ObjectStore.writeFile(ObjectStore.BLOB, new File(filename));
     }
 
-    /** Hash the file content to get the SHA-1 id of this file.
-     * @return hash ID
+    /** Construct a blob for FILENAME out of the stored object ID.
+     * @param filename
+     * @param id
      * */
-    public String hash() {
-        ArrayList<Object> vals = new ArrayList<Object>();
-        vals.add(Utils.serialize(_filename));
-        vals.add(getContentAsByte());
+    Blob(String filename, String id) {
+        _filename = filename;
+        _id = id;
+    }
 
-        return Utils.sha1(Utils.serialize(this));
+    /** Return the blob with ID in the object store, naming it FILENAME.
+     * @param filename
+     * @param id
+     * @return a Blob, or null if no such object is stored
+     * */
+    public static Blob load(String filename, String id) {
+        if (id == null || !ObjectStore.contains(id)) {
+            return null;
+        }
+        return new Blob(filename, id);
     }
 
     /** Get the filename.
@@ -57,14 +63,21 @@ public class Blob implements Serializable {
      * @return file content
      * */
     public String getContent() {
-        return _content;
+        return new String(getContentAsByte(), StandardCharsets.UTF_8);
     }
 
     /** Get file content as bytes.
      * @return content as bytes
      * */
     public byte[] getContentAsByte() {
-        return Utils.serialize(_content);
+        return ObjectStore.read(_id, ObjectStore.BLOB);
+    }
+
+    /** Write the contents of this blob to FILE, replacing what it held.
+     * @param file
+     * */
+    public void writeTo(File file) {
+        ObjectStore.copyTo(_id, ObjectStore.BLOB, file);
     }
 
     /** Overriding equals to compare two Blob objects. */
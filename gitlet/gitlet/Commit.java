@@ -1,36 +1,52 @@
 package gitlet;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Date;
 import java.util.Calendar;
-import java.util.ArrayList;
+import java.util.Locale;
 import java.util.TimeZone;
 
 /** The Commit class that stores all the information of the commit
- * that is made in Gitlet.
+ * that is made in Gitlet. A commit is stored in the compact form
+ * written by encode(): a format byte followed by its fields.
  *  @author Alex Liang
  */
 public class Commit implements Serializable {
-    /** CWD. */
-    private static final String CWD = System.getProperty("user.dir") + "/";
-
-    /** Path to the folder that stores all the blobs with ID as filename. */
-    private static final String BLOBS_PATH = CWD + ".gitlet/blobs/";
-
     /** Initial year. */
     private static final int YEAR = 1970;
 
+    /** First byte of the compact encoding. */
+    private static final byte FORMAT = 1;
+
+    /** Format of commit times in logs. */
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z", Locale.US)
+        .withZone(ZoneId.of("America/Los_Angeles"));
+
     /** Commit message. */
     private String _message;
 
     /** Commit time. */
     private Date _time;
 
-    /** Blobs included in the commit. Stored as HashMap<Filename, Blob>. */
-    private HashMap<String, String> _blobs;
+    /** ID of the root tree holding the files of the commit. */
+    private String _tree;
+
+    /** Blobs included in the commit, as HashMap<Filename, BlobID>.
+     *  Read from the tree on first use. */
+    private transient HashMap<String, String> _blobs;
 
     /** ID of the parent of this commit. The initial commit will
      *  have a parent NULL. */
@@ -50,13 +66,14 @@ public class Commit implements Serializable {
         _message = "initial commit";
         _time = setTime(YEAR, 1, 4, 0, 0, 0);
         _blobs = new HashMap<String, String>();
+        _tree = Tree.write(_blobs);
         _parent = null;
         _mergedParent = null;
         _branch = "master";
         _id = hash();
     }
 
-    /** Constructor.
+    /** Constructor. The trees of BLOBS are stored right away.
      * @param message
      * @param blobs
      * @param branch
@@ -67,27 +84,115 @@ public class Commit implements Serializable {
         _message = message;
         _time = new Date();
         _blobs = blobs;
+        _tree = Tree.write(blobs);
         _parent = parent;
         _mergedParent = null;
         _branch = branch;
         _id = hash();
     }
 
-    /** Hash the Commit content to get the SHA-1 id of this commit.
+    /** A commit read from the compact encoding IN, after its format
+     *  byte. */
+    private Commit(DataInputStream in) throws IOException {
+        _message = readString(in);
+        _time = new Date(in.readLong());
+        _tree = readString(in);
+        _parent = readString(in);
+        _mergedParent = readString(in);
+        _id = readString(in);
+        _branch = readString(in);
+    }
+
+    /** Return the commit stored as CONTENT in the compact form.
+     * @param content
+     * @return a Commit
+     * */
+    static Commit decode(byte[] content) {
+        if (content.length == 0 || content[0] != FORMAT) {
+            throw Utils.error("Commit is corrupt");
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(content, 1, content.length - 1))) {
+            return new Commit(in);
+        } catch (IOException excp) {
+            throw Utils.error("Commit is corrupt");
+        }
+    }
+
+    /** Return the stored commit with ID.
+     * @param id
+     * @return a Commit
+     * */
+    static Commit load(String id) {
+        return decode(ObjectStore.read(id, ObjectStore.COMMIT));
+    }
+
+    /** Return the compact encoding of this commit.
+     * @return the stored form
+     * */
+    byte[] encode() {
+        return encode(_id);
+    }
+
+    /** Return the compact encoding of this commit with ID as its ID. */
+    private byte[] encode(String id) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            writeString(out, _message);
+            out.writeLong(_time.getTime());
+            writeString(out, _tree);
+            writeString(out, _parent);
+            writeString(out, _mergedParent);
+            writeString(out, id);
+            writeString(out, _branch);
+        } catch (IOException excp) {
+            throw new Error("unexpected exception", excp);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Write the string S, which may be null, to OUT. */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    /** Return a string, possibly null, written by writeString to IN. */
+    private static String readString(DataInputStream in)
+            throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /** Hash the Commit content to get the id of this commit. Every
+     *  field of the encoding but the ID itself is hashed, so commits
+     *  that differ in their tree, either parent or their time have
+     *  different IDs.
      * @return hash ID of the commit
      * */
     public String hash() {
-        ArrayList<Object> vals = new ArrayList<Object>();
-        vals.add(Utils.serialize(_message));
-        vals.add(Utils.serialize(_parent));
-        vals.add(Utils.serialize(_id));
-        vals.add(Utils.serialize(_branch));
-
-        return Utils.sha1(Utils.serialize(vals));
+        return Hashing.hash(encode(null));
     }
 
+    /** Record MERGEDPARENT as the merged-in parent of this commit,
+     *  which changes its ID.
+     * @param mergedParent
+     * */
     public void setMergedParent(String mergedParent) {
         this._mergedParent = mergedParent;
+        _id = hash();
     }
 
     /** Get the blob from the current commit. Throw an exception
@@ -96,15 +201,11 @@ public class Commit implements Serializable {
      * @return a Blob
      * */
     public Blob getBlob(String filename) {
-        if (!_blobs.containsKey(filename)) {
+        if (!getBlobs().containsKey(filename)) {
             return null;
         }
 
-        String blobID = _blobs.get(filename);
-        File blobFile = new File(BLOBS_PATH + blobID);
-        Blob blob = Utils.readObject(blobFile, Blob.class);
-
-        return blob;
+        return Blob.load(filename, getBlobs().get(filename));
     }
 
     /** Get the commit message.
@@ -125,19 +226,51 @@ public class Commit implements Serializable {
      * @return time as a string
      * */
     public String getTimeAsString() {
-        String pattern = "EE MMM dd HH:mm:ss yyyy Z";
-        SimpleDateFormat simpleDateFormat = new SimpleDateFormat(pattern);
-        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("PST"));
-        return simpleDateFormat.format(_time);
+        return formatTime(_time.getTime());
+    }
+
+    /** Return the time MILLIS, in milliseconds since the epoch, as
+     *  shown in logs.
+     * @param millis
+     * @return time as a string
+     * */
+    static String formatTime(long millis) {
+        return TIME_FORMAT.format(Instant.ofEpochMilli(millis));
+    }
+
+    /** Return the time TEXT, an ISO date such as 2024-01-31 or date and
+     *  time such as 2024-01-31T09:30, in the time zone of logs, as
+     *  milliseconds since the epoch. A date stands for its midnight.
+     * @param text
+     * @return milliseconds since the epoch
+     * */
+    static long parseTime(String text) {
+        ZoneId zone = TIME_FORMAT.getZone();
+        if (text.contains("T")) {
+            return LocalDateTime.parse(text).atZone(zone).toInstant()
+                .toEpochMilli();
+        }
+        return LocalDate.parse(text).atStartOfDay(zone).toInstant()
+            .toEpochMilli();
     }
 
     /** Get the blobs(filetracked) in this commit.
      * @return all the blobcs in this commit
      * */
     public HashMap<String, String> getBlobs() {
+        if (_blobs == null) {
+            _blobs = Tree.files(_tree);
+        }
         return _blobs;
     }
 
+    /** Get the root tree of this commit.
+     * @return ID of the root tree
+     * */
+    public String getTree() {
+        return _tree;
+    }
+
     /** Get the parent of this commit.
      * @return ID of the parent
      * */
@@ -171,10 +304,11 @@ public class Commit implements Serializable {
      * @return true or false
      * */
     public boolean contains(String filename) {
-        return _blobs.containsKey(filename);
+        return getBlobs().containsKey(filename);
     }
 
-    /** Time setting helper function.
+    /** Time setting helper function. The time is taken in the time
+     *  zone of logs, so that it is the same instant on every machine.
      * @param date
      * @param hrs
      * @param min
@@ -185,16 +319,10 @@ public class Commit implements Serializable {
      * */
     public Date setTime(int year, int month, int date,
                         int hrs, int min, int sec) {
-        Date d = new Date();
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(d);
-        calendar.set(Calendar.MILLISECOND, 0);
-        calendar.set(Calendar.SECOND, sec);
-        calendar.set(Calendar.MINUTE, min);
-        calendar.set(Calendar.HOUR, hrs);
-        calendar.set(Calendar.DATE, date);
-        calendar.set(Calendar.MONTH, month);
-        calendar.set(Calendar.YEAR, year);
+        Calendar calendar = Calendar.getInstance(
+                TimeZone.getTimeZone(TIME_FORMAT.getZone()));
+        calendar.clear();
+        calendar.set(year, month, date, hrs, min, sec);
 
         return calendar.getTime();
     }
@@ -0,0 +1,296 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/** The shape of the commit history, kept in `.gitlet/commit-graph` so
+ *  that walking it never deserializes a Commit. Every commit has a
+ *  dense position, numbered in the order commits were added, and for
+ *  each position the graph stores the positions of both parents, the
+ *  generation number (one more than the largest generation of the
+ *  parents, 1 for a root) and the commit time. A parent is always
+ *  added before its children, so its position is smaller.
+ *  The file is a header followed by one fixed-size record per commit
+ *  and is only ever appended to.
+ *  @author Alex Liang
+ */
+class CommitGraph {
+    /** CWD. */
+    private static final String CWD = System.getProperty("user.dir") + "/";
+
+    /** Path to the commit-graph file. */
+    private static final String GRAPH_PATH = CWD + ".gitlet/commit-graph";
+
+    /** Magic number opening the file ("GCGR"). */
+    private static final int MAGIC = 0x47434752;
+
+    /** Format version. */
+    private static final int VERSION = 1;
+
+    /** Parent position of a commit without that parent. */
+    static final int NONE = -1;
+
+    /** Initial capacity of the arrays. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Length in bytes of a commit ID. */
+    private int _idLength;
+
+    /** Number of commits in the graph. */
+    private int _count;
+
+    /** Raw commit IDs, _idLength bytes per position. */
+    private byte[] _ids;
+
+    /** Position of the first parent of each position, or NONE. */
+    private int[] _parents;
+
+    /** Position of the merged-in parent of each position, or NONE. */
+    private int[] _mergedParents;
+
+    /** Generation number of each position. */
+    private int[] _generations;
+
+    /** Commit time in milliseconds of each position. */
+    private long[] _times;
+
+    /** Positions by hex commit ID. */
+    private final HashMap<String, Integer> _positions =
+        new HashMap<String, Integer>();
+
+    /** An empty graph for IDs of IDLENGTH bytes. */
+    private CommitGraph(int idLength) {
+        _idLength = idLength;
+        _ids = new byte[INITIAL_CAPACITY * idLength];
+        _parents = new int[INITIAL_CAPACITY];
+        _mergedParents = new int[INITIAL_CAPACITY];
+        _generations = new int[INITIAL_CAPACITY];
+        _times = new long[INITIAL_CAPACITY];
+    }
+
+    /** Load the commit graph of the current repository, or return an
+     *  empty one if it has none yet. */
+    static CommitGraph load() {
+        File file = new File(GRAPH_PATH);
+        if (!file.isFile()) {
+            return new CommitGraph(Hashing.idLength());
+        }
+        ByteBuffer buf;
+        try {
+            buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit graph: %s",
+                    excp.getMessage());
+        }
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw Utils.error("Corrupt commit graph");
+        }
+        CommitGraph result = new CommitGraph(buf.getInt());
+        Transaction.trimTail(file, buf.position(), result.recordSize());
+        byte[] id = new byte[result._idLength];
+        while (buf.remaining() >= result.recordSize()) {
+            buf.get(id);
+            result.append(id, buf.getInt(), buf.getInt(), buf.getInt(),
+                    buf.getLong());
+        }
+        return result;
+    }
+
+    /** Return the number of commits in the graph. */
+    int size() {
+        return _count;
+    }
+
+    /** Return the position of the commit with hex ID, or -1 if it is
+     *  not in the graph.
+     * @param id
+     * @return position or -1
+     * */
+    int position(String id) {
+        Integer pos = _positions.get(id);
+        return pos == null ? -1 : pos;
+    }
+
+    /** Return the hex ID of the commit at POS.
+     * @param pos
+     * @return commit ID
+     * */
+    String id(int pos) {
+        return Utils.toHex(Arrays.copyOfRange(_ids, pos * _idLength,
+                (pos + 1) * _idLength));
+    }
+
+    /** Return the position of the first parent of POS, or NONE.
+     * @param pos
+     * @return position
+     * */
+    int parent(int pos) {
+        return _parents[pos];
+    }
+
+    /** Return the position of the merged-in parent of POS, or NONE.
+     * @param pos
+     * @return position
+     * */
+    int mergedParent(int pos) {
+        return _mergedParents[pos];
+    }
+
+    /** Return the generation number of POS.
+     * @param pos
+     * @return generation
+     * */
+    int generation(int pos) {
+        return _generations[pos];
+    }
+
+    /** Return the commit time of POS in milliseconds.
+     * @param pos
+     * @return time
+     * */
+    long time(int pos) {
+        return _times[pos];
+    }
+
+    /** Return the positions of POS and all its ancestors.
+     * @param pos
+     * @return a set of positions
+     * */
+    BitSet ancestors(int pos) {
+        BitSet result = new BitSet(pos + 1);
+        result.set(pos);
+        for (int p = pos; p >= 0; p = result.previousSetBit(p - 1)) {
+            if (_parents[p] != NONE) {
+                result.set(_parents[p]);
+            }
+            if (_mergedParents[p] != NONE) {
+                result.set(_mergedParents[p]);
+            }
+        }
+        return result;
+    }
+
+    /** Add CM to the graph, together with any of its ancestors that are
+     *  missing (as in a repository created before the graph existed),
+     *  and append them to the file.
+     * @param cm
+     * @return the position of CM
+     * */
+    int add(Commit cm) {
+        if (position(cm.getID()) >= 0) {
+            return position(cm.getID());
+        }
+        int first = _count;
+        ArrayDeque<Commit> pending = new ArrayDeque<Commit>();
+        pending.push(cm);
+        while (!pending.isEmpty()) {
+            Commit curr = pending.peek();
+            Commit missing = missingParent(curr);
+            if (missing != null) {
+                pending.push(missing);
+                continue;
+            }
+            pending.pop();
+            if (position(curr.getID()) < 0) {
+                int parent = parentPosition(curr.getParent());
+                int merged = parentPosition(curr.getMergedParent());
+                int generation = 1 + Math.max(generationOf(parent),
+                        generationOf(merged));
+                append(PackFile.toBytes(curr.getID()), parent, merged,
+                        generation, curr.getTime().getTime());
+            }
+        }
+        write(first);
+        return position(cm.getID());
+    }
+
+    /** Return a parent of CM that is not yet in the graph, loaded from
+     *  the object store, or null if both are present. */
+    private Commit missingParent(Commit cm) {
+        for (String id : new String[] {cm.getParent(),
+                                       cm.getMergedParent()}) {
+            if (id != null && position(id) < 0) {
+                return Commit.load(id);
+            }
+        }
+        return null;
+    }
+
+    /** Return the position of the commit with ID, or NONE if ID is
+     *  null. */
+    private int parentPosition(String id) {
+        return id == null ? NONE : position(id);
+    }
+
+    /** Return the generation of POS, or 0 if it is NONE. */
+    private int generationOf(int pos) {
+        return pos == NONE ? 0 : _generations[pos];
+    }
+
+    /** Add a commit with raw ID and the given PARENT, MERGED parent,
+     *  GENERATION and TIME at the next position. */
+    private void append(byte[] id, int parent, int merged, int generation,
+                        long time) {
+        if (_count == _parents.length) {
+            int capacity = 2 * _count;
+            _ids = Arrays.copyOf(_ids, capacity * _idLength);
+            _parents = Arrays.copyOf(_parents, capacity);
+            _mergedParents = Arrays.copyOf(_mergedParents, capacity);
+            _generations = Arrays.copyOf(_generations, capacity);
+            _times = Arrays.copyOf(_times, capacity);
+        }
+        System.arraycopy(id, 0, _ids, _count * _idLength, _idLength);
+        _parents[_count] = parent;
+        _mergedParents[_count] = merged;
+        _generations[_count] = generation;
+        _times[_count] = time;
+        _positions.put(Utils.toHex(id), _count);
+        _count += 1;
+    }
+
+    /** Append the records of positions FIRST and above to the file,
+     *  writing the header first if the file is new. */
+    private void write(int first) {
+        File file = new File(GRAPH_PATH);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (!file.isFile()) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(_idLength);
+            }
+            for (int pos = first; pos < _count; pos += 1) {
+                out.write(_ids, pos * _idLength, _idLength);
+                out.writeInt(_parents[pos]);
+                out.writeInt(_mergedParents[pos]);
+                out.writeInt(_generations[pos]);
+                out.writeLong(_times[pos]);
+            }
+        } catch (IOException excp) {
+            throw new Error("unexpected exception", excp);
+        }
+        try (BufferedOutputStream out = new BufferedOutputStream(
+                new FileOutputStream(file, true))) {
+            bytes.writeTo(out);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit graph: %s",
+                    excp.getMessage());
+        }
+        Transaction.written(file);
+    }
+
+    /** Return the size in bytes of one record. */
+    private int recordSize() {
+        return _idLength + 3 * Integer.BYTES + Long.BYTES;
+    }
+}
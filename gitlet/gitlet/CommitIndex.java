@@ -0,0 +1,197 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** An index of all commit IDs, kept in `.gitlet/commit-index`, that
+ *  resolves abbreviated IDs. The file holds a sorted run of raw IDs,
+ *  searched by binary search, followed by a short unsorted tail of IDs
+ *  appended since the run was last written. Once the tail grows past
+ *  MAX_TAIL entries the whole file is rewritten as one sorted run.
+ *  @author Alex Liang
+ */
+class CommitIndex {
+    /** CWD. */
+    private static final String CWD = System.getProperty("user.dir") + "/";
+
+    /** Path to the index file. */
+    private static final String INDEX_PATH = CWD + ".gitlet/commit-index";
+
+    /** Magic number opening the file ("GCIX"). */
+    private static final int MAGIC = 0x47434958;
+
+    /** Length in bytes of the header: magic, ID length and number of
+     *  sorted IDs. */
+    private static final int HEADER_SIZE = 12;
+
+    /** Largest number of unsorted IDs kept after the sorted run. */
+    private static final int MAX_TAIL = 256;
+
+    /** Shortest prefix that is resolved. */
+    static final int MIN_PREFIX = 4;
+
+    /** Length in bytes of an ID. */
+    private final int _idLength;
+
+    /** The sorted raw IDs, _idLength bytes each. */
+    private byte[] _sorted;
+
+    /** The raw IDs of the tail, in the order they were added. */
+    private final ArrayList<byte[]> _tail = new ArrayList<byte[]>();
+
+    /** An empty index of IDs of IDLENGTH bytes. */
+    private CommitIndex(int idLength) {
+        _idLength = idLength;
+        _sorted = new byte[0];
+    }
+
+    /** Load the commit index of the current repository. If it has none
+     *  yet, build it from the commits in the object store. */
+    static CommitIndex load() {
+        File file = new File(INDEX_PATH);
+        if (!file.isFile()) {
+            CommitIndex result = new CommitIndex(Hashing.idLength());
+            for (String id : ObjectStore.list(ObjectStore.COMMIT)) {
+                result._tail.add(PackFile.toBytes(id));
+            }
+            result.rewrite();
+            return result;
+        }
+        ByteBuffer buf;
+        try {
+            buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit index: %s",
+                    excp.getMessage());
+        }
+        if (buf.getInt() != MAGIC) {
+            throw Utils.error("Corrupt commit index");
+        }
+        CommitIndex result = new CommitIndex(buf.getInt());
+        Transaction.trimTail(file, HEADER_SIZE, result._idLength);
+        result._sorted = new byte[buf.getInt() * result._idLength];
+        buf.get(result._sorted);
+        while (buf.remaining() >= result._idLength) {
+            byte[] id = new byte[result._idLength];
+            buf.get(id);
+            result._tail.add(id);
+        }
+        return result;
+    }
+
+    /** Add the commit ID to the index and to its file.
+     * @param id
+     * */
+    void add(String id) {
+        if (!resolve(id).isEmpty()) {
+            return;
+        }
+        _tail.add(PackFile.toBytes(id));
+        if (_tail.size() > MAX_TAIL) {
+            rewrite();
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(INDEX_PATH, true)) {
+            out.write(_tail.get(_tail.size() - 1));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit index: %s",
+                    excp.getMessage());
+        }
+        Transaction.written(new File(INDEX_PATH));
+    }
+
+    /** Return the sorted full IDs of all commits whose ID starts with
+     *  the hex PREFIX. A PREFIX shorter than MIN_PREFIX or containing
+     *  anything but hex digits matches nothing.
+     * @param prefix
+     * @return matching commit IDs
+     * */
+    List<String> resolve(String prefix) {
+        ArrayList<String> result = new ArrayList<String>();
+        if (prefix.length() < MIN_PREFIX || prefix.length() > 2 * _idLength
+                || !prefix.matches("[0-9a-fA-F]*")) {
+            return result;
+        }
+        byte[] nibbles = new byte[prefix.length()];
+        for (int i = 0; i < nibbles.length; i += 1) {
+            nibbles[i] = (byte) Character.digit(prefix.charAt(i), 16);
+        }
+        int count = _sorted.length / _idLength;
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(_sorted, mid * _idLength, nibbles) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int pos = lo; pos < count
+                 && compare(_sorted, pos * _idLength, nibbles) == 0;
+             pos += 1) {
+            result.add(Utils.toHex(Arrays.copyOfRange(_sorted,
+                    pos * _idLength, (pos + 1) * _idLength)));
+        }
+        for (byte[] id : _tail) {
+            if (compare(id, 0, nibbles) == 0) {
+                result.add(Utils.toHex(id));
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Compare the leading nibbles of the ID at IDS[START] with
+     *  NIBBLES, returning <0, 0 or >0. */
+    private static int compare(byte[] ids, int start, byte[] nibbles) {
+        for (int i = 0; i < nibbles.length; i += 1) {
+            int b = ids[start + i / 2];
+            int nibble = i % 2 == 0 ? (b >> 4) & 0xf : b & 0xf;
+            if (nibble != nibbles[i]) {
+                return nibble - nibbles[i];
+            }
+        }
+        return 0;
+    }
+
+    /** Merge the tail into the sorted run and write the whole file. */
+    private void rewrite() {
+        int count = _sorted.length / _idLength;
+        byte[][] all = new byte[count + _tail.size()][];
+        for (int i = 0; i < count; i += 1) {
+            all[i] = Arrays.copyOfRange(_sorted, i * _idLength,
+                    (i + 1) * _idLength);
+        }
+        for (int i = 0; i < _tail.size(); i += 1) {
+            all[count + i] = _tail.get(i);
+        }
+        Arrays.sort(all, Arrays::compareUnsigned);
+        _sorted = new byte[all.length * _idLength];
+        for (int i = 0; i < all.length; i += 1) {
+            System.arraycopy(all[i], 0, _sorted, i * _idLength, _idLength);
+        }
+        _tail.clear();
+
+        File tmp = new File(INDEX_PATH + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_idLength);
+            out.writeInt(all.length);
+            out.write(_sorted);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit index: %s",
+                    excp.getMessage());
+        }
+        Transaction.publish(tmp, new File(INDEX_PATH));
+    }
+}
@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/** The IDs, times and messages of all commits, in the order they were
+ *  made, kept in `.gitlet/commit-log` so that `global-log` and `find`
+ *  can read them in one sequential pass, or one entry at a known
+ *  offset, without loading any commit. The file is a header followed
+ *  by one record per commit, holding its raw ID, its time in
+ *  milliseconds and its message as a length and UTF-8 bytes, then the
+ *  length of all that and its CRC-32. The file is only ever appended
+ *  to. If its last record is cut short or fails its check, as after a
+ *  crash in the middle of an append, the log is built again, since the
+ *  message index holds offsets past it.
+ *  @author Alex Liang
+ */
+class CommitLog {
+    /** CWD. */
+    private static final String CWD = System.getProperty("user.dir") + "/";
+
+    /** Path to the log file. */
+    static final String LOG_PATH = CWD + ".gitlet/commit-log";
+
+    /** Magic number opening the file ("GCLG"). */
+    private static final int MAGIC = 0x47434c47;
+
+    /** Length in bytes of the header. */
+    private static final int HEADER_SIZE = 8;
+
+    /** Length in bytes of the length and checksum ending a record. */
+    private static final int TRAILER_SIZE = 8;
+
+    /** Length in bytes of a commit ID. */
+    private final int _idLength;
+
+    /** A log of IDs of IDLENGTH bytes. */
+    private CommitLog(int idLength) {
+        _idLength = idLength;
+    }
+
+    /** Load the commit log of the current repository. If it has none
+     *  yet, or its last record is damaged, build it from the commits in
+     *  the object store, oldest first, and drop the message index,
+     *  whose offsets refer to it. */
+    static CommitLog load() {
+        File file = new File(LOG_PATH);
+        if (!file.isFile()) {
+            return build();
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("Corrupt commit log");
+            }
+            CommitLog result = new CommitLog(in.readInt());
+            return result.endsWell(in) ? result : build();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit log: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Return true iff the log file IN is empty or ends in a whole
+     *  record whose checksum matches. */
+    private boolean endsWell(RandomAccessFile in) throws IOException {
+        long size = in.length();
+        if (size == HEADER_SIZE) {
+            return true;
+        } else if (size < HEADER_SIZE + TRAILER_SIZE) {
+            return false;
+        }
+        in.seek(size - TRAILER_SIZE);
+        int length = in.readInt();
+        int checksum = in.readInt();
+        if (length < _idLength + 8 + 4
+            || length > size - HEADER_SIZE - TRAILER_SIZE) {
+            return false;
+        }
+        byte[] record = new byte[length];
+        in.seek(size - TRAILER_SIZE - length);
+        in.readFully(record);
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue() == checksum;
+    }
+
+    /** Write a new log file holding the commits in the object store and
+     *  return its log. */
+    private static CommitLog build() {
+        ArrayList<Commit> commits = new ArrayList<Commit>();
+        for (String id : ObjectStore.list(ObjectStore.COMMIT)) {
+            commits.add(Commit.load(id));
+        }
+        commits.sort(Comparator.comparing(Commit::getTime));
+        CommitLog result = new CommitLog(Hashing.idLength());
+        File tmp = new File(LOG_PATH + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(result._idLength);
+            for (Commit cm : commits) {
+                result.write(out, cm);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit log: %s",
+                    excp.getMessage());
+        }
+        new File(MessageIndex.INDEX_PATH).delete();
+        Transaction.publish(tmp, new File(LOG_PATH));
+        return result;
+    }
+
+    /** Append the commit CM to the log.
+     * @param cm
+     * @return the offset of its entry
+     * */
+    long add(Commit cm) {
+        File file = new File(LOG_PATH);
+        long offset = file.length();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            write(out, cm);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit log: %s",
+                    excp.getMessage());
+        }
+        Transaction.written(file);
+        return offset;
+    }
+
+    /** Pass each entry of the log to VISITOR, oldest first.
+     * @param visitor
+     * */
+    void scan(Consumer<Entry> visitor) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(LOG_PATH),
+                                        1 << 16))) {
+            in.skipNBytes(HEADER_SIZE);
+            long offset = HEADER_SIZE;
+            while (true) {
+                Entry entry;
+                try {
+                    entry = read(in, offset);
+                } catch (EOFException excp) {
+                    break;
+                }
+                visitor.accept(entry);
+                offset += entry.size(_idLength);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit log: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Return the entry at OFFSET, as returned by add.
+     * @param offset
+     * @return the entry
+     * */
+    Entry read(long offset) {
+        try (RandomAccessFile file = new RandomAccessFile(LOG_PATH, "r")) {
+            file.seek(offset);
+            return read(file, offset);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit log: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Write the record of CM to OUT. */
+    private void write(DataOutputStream out, Commit cm) throws IOException {
+        byte[] message = cm.getMessage().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(_idLength + 8 + 4
+                + message.length);
+        record.put(PackFile.toBytes(cm.getID()));
+        record.putLong(cm.getTime().getTime());
+        record.putInt(message.length);
+        record.put(message);
+        CRC32 crc = new CRC32();
+        crc.update(record.array());
+        out.write(record.array());
+        out.writeInt(record.capacity());
+        out.writeInt((int) crc.getValue());
+    }
+
+    /** Return the entry read from IN, which starts at OFFSET. */
+    private Entry read(DataInput in, long offset) throws IOException {
+        byte[] id = new byte[_idLength];
+        in.readFully(id);
+        long time = in.readLong();
+        byte[] message = new byte[in.readInt()];
+        in.readFully(message);
+        in.skipBytes(TRAILER_SIZE);
+        return new Entry(Utils.toHex(id), time,
+                new String(message, StandardCharsets.UTF_8), offset,
+                message.length);
+    }
+
+    /** One commit in the log. */
+    static class Entry {
+        /** The commit ID. */
+        private final String _id;
+
+        /** Its time in milliseconds. */
+        private final long _time;
+
+        /** Its message. */
+        private final String _message;
+
+        /** Offset of the entry in the log. */
+        private final long _offset;
+
+        /** Length in bytes of the encoded message. */
+        private final int _messageLength;
+
+        /** The entry at OFFSET for commit ID made at TIME with MESSAGE,
+         *  MESSAGELENGTH bytes long in UTF-8. */
+        Entry(String id, long time, String message, long offset,
+              int messageLength) {
+            _id = id;
+            _time = time;
+            _message = message;
+            _offset = offset;
+            _messageLength = messageLength;
+        }
+
+        /** Return the commit ID. */
+        String id() {
+            return _id;
+        }
+
+        /** Return the commit time in milliseconds. */
+        long time() {
+            return _time;
+        }
+
+        /** Return the commit message. */
+        String message() {
+            return _message;
+        }
+
+        /** Return the offset of this entry in the log. */
+        long offset() {
+            return _offset;
+        }
+
+        /** Return the length in bytes of this entry, given IDLENGTH. */
+        private long size(int idLength) {
+            return idLength + 8 + 4 + _messageLength + TRAILER_SIZE;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+/** A long-running Gitlet process that serves commands for the
+ *  repository in the current directory over the Unix domain socket
+ *  `.gitlet/daemon.sock`, so that a command does not pay for starting
+ *  and warming up a JVM or for refilling the object caches. A client
+ *  sends the number of arguments followed by each argument, shuts down
+ *  its side of the connection and reads the output of the command until
+ *  the daemon closes the connection. Commands run one at a time, and a
+ *  command that fails in an unexpected way is reported to its client in
+ *  one line without stopping the daemon; `daemon stop` asks it to
+ *  finish, removing the socket. Other
+ *  processes may still change the store, as a batch read from the
+ *  standard input does, so before each command the daemon reads the
+ *  packs and object filter again if they have been replaced.
+ *  @author Alex Liang
+ */
+class Daemon {
+    /** Path of the socket, relative to the working directory. */
+    static final Path SOCKET_PATH = Path.of(".gitlet", "daemon.sock");
+
+    /** Time the pack folder was last changed when the store was last
+     *  checked, or null if there was none. */
+    private static FileTime _packsChanged;
+
+    /** Identity of the object filter file when the store was last
+     *  checked, or null if there was none. */
+    private static Object _filterKey;
+
+    /** Run the command ARGS in the daemon serving this repository,
+     *  copying its output to OUT. Return false, having done nothing, if
+     *  no daemon is running.
+     * @param args
+     * @param out
+     * @return true iff a daemon ran the command
+     * */
+    static boolean forward(String[] args, OutputStream out)
+            throws IOException {
+        SocketChannel channel = connect();
+        if (channel == null) {
+            return false;
+        }
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            channel.shutdownOutput();
+            Channels.newInputStream(channel).transferTo(out);
+            out.flush();
+        }
+        return true;
+    }
+
+    /** Ask the running daemon to finish once the command it is running
+     *  is done. */
+    static void stop() throws IOException {
+        if (!forward(new String[] {"daemon", "stop"}, System.out)) {
+            throw Utils.error("No Gitlet daemon is running.");
+        }
+    }
+
+    /** Serve commands until asked to stop or the process is killed. */
+    static void serve() throws IOException {
+        if (!new File(Refs.HEAD_PATH).exists()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        SocketChannel running = connect();
+        if (running != null) {
+            running.close();
+            throw Utils.error("A Gitlet daemon is already running.");
+        }
+        Files.deleteIfExists(SOCKET_PATH);
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET_PATH));
+            Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> SOCKET_PATH.toFile().delete()));
+            boolean serving = true;
+            while (serving) {
+                try (SocketChannel client = server.accept()) {
+                    serving = handle(client);
+                } catch (Throwable excp) {
+                    continue;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(SOCKET_PATH);
+        }
+    }
+
+    /** Return a connection to the running daemon, or null if there is
+     *  none. */
+    private static SocketChannel connect() {
+        if (!Files.exists(SOCKET_PATH)) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(
+                UnixDomainSocketAddress.of(SOCKET_PATH));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Make the object store read its packs and filter again if another
+     *  process has packed objects or rebuilt the filter since the last
+     *  check. Objects are named by their contents, so cached objects
+     *  stay valid. */
+    private static void refresh() {
+        FileTime packsChanged;
+        Object filterKey;
+        try {
+            packsChanged = Files.getLastModifiedTime(
+                    Path.of(PackFile.PACK_PATH));
+        } catch (IOException excp) {
+            packsChanged = null;
+        }
+        try {
+            filterKey = Files.readAttributes(Path.of(ObjectFilter.FILTER_PATH),
+                    BasicFileAttributes.class).fileKey();
+        } catch (IOException excp) {
+            filterKey = null;
+        }
+        if (!Objects.equals(packsChanged, _packsChanged)
+            || !Objects.equals(filterKey, _filterKey)) {
+            ObjectStore.reload();
+            _packsChanged = packsChanged;
+            _filterKey = filterKey;
+        }
+    }
+
+    /** Read one command from CLIENT, run it and send back its output.
+     *  Return false iff the command asks the daemon to stop. */
+    private static boolean handle(SocketChannel client) throws IOException {
+        DataInputStream request = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(client)));
+        String[] args = new String[request.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = request.readUTF();
+        }
+        if (args.length == 2 && args[0].equals("daemon")
+            && args[1].equals("stop")) {
+            return false;
+        }
+        PrintStream out = new PrintStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+        PrintStream stdout = System.out;
+        System.setOut(out);
+        try {
+            refresh();
+            Main.run(args);
+        } catch (GitletException excp) {
+            out.println(excp.getMessage());
+        } catch (Throwable excp) {
+            out.println("Internal error: " + excp);
+            excp.printStackTrace();
+        } finally {
+            System.setOut(stdout);
+            out.flush();
+        }
+        return true;
+    }
+}
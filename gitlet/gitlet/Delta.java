@@ -0,0 +1,160 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Line-based deltas between two versions of a file, used to store a
+ *  blob in a pack as its difference from a base blob. A delta is the
+ *  length of the result followed by a sequence of instructions: COPY
+ *  takes a byte range of the base, INSERT supplies literal bytes. The
+ *  copied ranges are the runs of common lines found by Diff.
+ *  @author Alex Liang
+ */
+class Delta {
+    /** Instruction copying OFFSET, LENGTH from the base. */
+    private static final int COPY = 1;
+
+    /** Instruction inserting LENGTH literal bytes. */
+    private static final int INSERT = 2;
+
+    /** Largest number of lines inserted plus deleted between base and
+     *  target for which we compute a delta. Past this, the files share
+     *  too little for a delta to pay. */
+    private static final int MAX_EDITS = 4096;
+
+    /** Return a delta that turns BASE into TARGET, or null if the files
+     *  differ too much to be worth a delta.
+     * @param base
+     * @param target
+     * @return the encoded delta
+     * */
+    static byte[] create(byte[] base, byte[] target) {
+        int[] baseStarts = lineStarts(base);
+        int[] targetStarts = lineStarts(target);
+        int baseLines = baseStarts.length - 1;
+        int targetLines = targetStarts.length - 1;
+        Diff diff = new Diff();
+        diff.setSequences(lines(base, baseStarts),
+                lines(target, targetStarts));
+        diff.setEditLimit(MAX_EDITS);
+        int[] common = diff.commonSubsequence();
+        if (common == null) {
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+        int next = 0;
+        for (int k = 0; k < common.length; k += 3) {
+            int s1 = common[k], s2 = common[k + 1], len = common[k + 2];
+            if (s2 > next) {
+                insert(out, target, targetStarts[next], targetStarts[s2]);
+            }
+            out.write(COPY);
+            writeVarint(out, baseStarts[s1]);
+            writeVarint(out, baseStarts[s1 + len] - baseStarts[s1]);
+            next = s2 + len;
+        }
+        if (next < targetLines) {
+            insert(out, target, targetStarts[next], target.length);
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE.
+     * @param base
+     * @param delta
+     * @return the reconstructed content
+     * */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        byte[] result = new byte[readVarint(delta, pos)];
+        int length = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == COPY) {
+                int start = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, start, result, length, len);
+                length += len;
+            } else if (op == INSERT) {
+                int len = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, length, len);
+                pos[0] += len;
+                length += len;
+            } else {
+                throw Utils.error("Corrupt delta instruction %d", op);
+            }
+        }
+        if (length != result.length) {
+            throw Utils.error("Corrupt delta: expected %d bytes, got %d",
+                    result.length, length);
+        }
+        return result;
+    }
+
+    /** Write an INSERT of CONTENT[START .. END-1] to OUT. */
+    private static void insert(ByteArrayOutputStream out, byte[] content,
+                               int start, int end) {
+        out.write(INSERT);
+        writeVarint(out, end - start);
+        out.write(content, start, end - start);
+    }
+
+    /** Return the starting offsets of the lines of CONTENT, followed by
+     *  CONTENT.length. Each line keeps its terminating newline. */
+    static int[] lineStarts(byte[] content) {
+        int count = 0;
+        for (int i = 0; i < content.length; i += 1) {
+            if (content[i] == '\n' || i == content.length - 1) {
+                count += 1;
+            }
+        }
+        int[] result = new int[count + 1];
+        int k = 1;
+        for (int i = 0; i < content.length; i += 1) {
+            if (content[i] == '\n' && i < content.length - 1) {
+                result[k] = i + 1;
+                k += 1;
+            }
+        }
+        result[count] = content.length;
+        return result;
+    }
+
+    /** Return the lines of CONTENT delimited by STARTS as Strings, one
+     *  char per byte, so that any content compares exactly. */
+    private static List<String> lines(byte[] content, int[] starts) {
+        List<String> result = new ArrayList<String>(starts.length - 1);
+        for (int i = 0; i + 1 < starts.length; i += 1) {
+            result.add(new String(content, starts[i],
+                    starts[i + 1] - starts[i], StandardCharsets.ISO_8859_1));
+        }
+        return result;
+    }
+
+    /** Write the non-negative VALUE to OUT, seven bits per byte. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Read a varint from BUF at POS[0], advancing POS[0] past it. */
+    private static int readVarint(byte[] buf, int[] pos) {
+        int result = 0;
+        int shift = 0;
+        while (true) {
+            int b = buf[pos[0]++];
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -2,19 +2,17 @@ package gitlet;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
 
-import static java.lang.Math.max;
-
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
@@ -27,8 +25,7 @@ public class Diff {
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
-        _lls = null;
-        _todo = null;
+        _common = null;
     }
 
     /** Set the sequences currently being compared to the contents
@@ -48,8 +45,7 @@ public class Diff {
                  excp) {
             _lines2 = Collections.emptyList();
         }
-        _lls = null;
-        _todo = null;
+        _common = null;
     }
 
     /** Return the first of the current sequences. */
@@ -72,63 +68,56 @@ public class Diff {
         return _lines2.get(k);
     }
 
+    /** The ways of choosing the common subsequence of two sequences. */
+    public enum Algorithm {
+        /** Myers' O((N+M)D) algorithm, in its linear-space form, which
+         *  finds a longest common subsequence. */
+        MYERS,
+        /** Patience diff: match the lines that occur exactly once in
+         *  each sequence, keeping the longest run of them that is in
+         *  the same order in both, and compare the gaps between them
+         *  the same way, falling back on MYERS where there are none. */
+        PATIENCE,
+        /** Histogram diff: match the longest region around the line
+         *  that occurs least often in the first sequence, and compare
+         *  the parts before and after it the same way. This extends
+         *  PATIENCE to sequences with few unique lines. */
+        HISTOGRAM
+    }
+
+    /** Use ALGORITHM to choose common subsequences.  The default is
+     *  MYERS.  lls always uses MYERS. */
+    public void setAlgorithm(Algorithm algorithm) {
+        _algorithm = algorithm;
+        _common = null;
+    }
+
+    /** Set the largest number of edits, deletions plus insertions, that
+     *  commonSubsequence and diffs will look for to LIMIT. When the
+     *  current sequences need more, they return null instead, after
+     *  O((N+M)*LIMIT) work. A negative LIMIT means no limit.  The limit
+     *  applies to the MYERS algorithm only. */
+    public void setEditLimit(int limit) {
+        _editLimit = limit;
+        _common = null;
+    }
+
     /** Return the length of the longest subsequence of the first K1 and K2
      *  items, respectively, of the current data sequences. */
     public int lls(int k1, int k2) {
         checkData();
-        if (_lls == null) {
-            _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
-            for (int[] row : _lls) {
-                Arrays.fill(row, -1);
-            }
-        }
-        if (k1 == 0 || k2 == 0
-            || k1 > _lines1.size() || k2 > _lines2.size()) {
+        k1 = Math.min(k1, _lines1.size());
+        k2 = Math.min(k2, _lines2.size());
+        if (k1 <= 0 || k2 <= 0) {
             return 0;
-        } else if (_lls[k1][k2] == -1) {
-            initStack();
-            push(k1, k2, 0);
-            while (!empty()) {
-                pop();
-                if (_llsTop1 == 0 || _llsTop2 == 0) {
-                    _lls[_llsTop1][_llsTop2] = 0;
-                } else if (_lls[_llsTop1][_llsTop2] != -1) {
-                    continue;
-                } else {
-                    switch (_llsState) {
-                    case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
-                            push(_llsTop1, _llsTop2, 4);
-                            push(_llsTop1 - 1, _llsTop2 - 1, 0);
-                        } else {
-                            push(_llsTop1, _llsTop2, 1);
-                        }
-                        continue;
-                    case 1:
-                        push(_llsTop1, _llsTop2, 2);
-                        push(_llsTop1, _llsTop2 - 1, 0);
-                        continue;
-                    case 2:
-                        push(_llsTop1, _llsTop2, 3);
-                        push(_llsTop1 - 1, _llsTop2, 0);
-                        continue;
-                    case 3:
-                        _lls[_llsTop1][_llsTop2]
-                            = max(_lls[_llsTop1][_llsTop2 - 1],
-                                  _lls[_llsTop1 - 1][_llsTop2]);
-                        continue;
-                    case 4:
-                        _lls[_llsTop1][_llsTop2]
-                            = _lls[_llsTop1 - 1][_llsTop2 - 1] + 1;
-                        continue;
-                    default:
-                        assert false;
-                    }
-                }
-            }
         }
-        return _lls[k1][k2];
+        if (k1 == _lines1.size() && k2 == _lines2.size() && _common != null
+            && _algorithm == Algorithm.MYERS) {
+            return _commonLength;
+        }
+        Matcher matcher = new Matcher(k1, k2, Algorithm.MYERS, false);
+        matcher.match(0, k1, 0, k2, false);
+        return matcher._matched;
     }
 
     /** Return the length of the longest common subsequence of the current
@@ -142,10 +131,7 @@ public class Diff {
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
-            return false;
-        }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        return _lines1.equals(_lines2);
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -160,36 +146,27 @@ public class Diff {
         return result;
     }
 
-    /** Return largest common subsequence of the sequences being compared as
-     *  a sequence of 3n values s01, s02, L0, s11, s12, L1,..., where
+    /** Return a common subsequence of the sequences being compared, chosen
+     *  by the current algorithm, as a sequence of 3n values s01, s02, L0,
+     *  s11, s12, L1,..., where
      *  si1 is the starting line position of the subsequence in the
      *  first file (0-based), si2 is the starting position in the second
-     *  file, and Li is the length of the subsequence. */
+     *  file, and Li is the length of the subsequence.  Returns null if
+     *  the sequences need more edits than the limit set by setEditLimit.
+     *  With MYERS, the subsequence is a longest one. */
     public int[] commonSubsequence() {
-        ArrayDeque<Integer> resultList = new ArrayDeque<>();
-
-        int k1, k2;
-        k1 = _lines1.size(); k2 = _lines2.size();
-        while (k1 > 0 && k2 > 0) {
-            int ls = lls(k1, k2);
-            if (lls(k1 - 1, k2) == ls) {
-                k1 -= 1;
-            } else if (lls(k1, k2 - 1) == ls) {
-                k2 -= 1;
-            } else {
-                int L;
-                L = 1;
-                while (k1 > L && k2 > L && lls(k1 - L - 1, k2 - L) != ls - L
-                       && lls(k1 - L, k2 - L  - 1) != ls - L) {
-                    L += 1;
-                }
-                resultList.offerFirst(L);
-                resultList.offerFirst(k2 - L);
-                resultList.offerFirst(k1 - L);
-                k1 -= L; k2 -= L;
+        checkData();
+        if (_common == null) {
+            int n = _lines1.size(), m = _lines2.size();
+            Matcher matcher = new Matcher(n, m, _algorithm,
+                                          _editLimit >= 0);
+            if (!matcher.match(0, n, 0, m, true)) {
+                return null;
             }
+            _common = toIntArr(matcher._runs);
+            _commonLength = matcher._matched;
         }
-        return toIntArr(resultList);
+        return _common;
     }
 
     /** Return the edit that converts the first of the sequences being compared
@@ -199,9 +176,13 @@ public class Diff {
      *  from that file, and the lines [ai .. ai + aL0 - 1] are the starting
      *  positions in the second file that are to replace them.  Either
      *  dLi or aLi, but not both, may be 0, indicating respectively simple
-     *  removal of lines or addition of lines. */
+     *  removal of lines or addition of lines.  Returns null if the
+     *  sequences need more edits than the limit set by setEditLimit. */
     public int[] diffs() {
         int[] common = commonSubsequence();
+        if (common == null) {
+            return null;
+        }
         ArrayList<Integer> result = new ArrayList<>();
         int e1, e2;
         e1 = e2 = 0;
@@ -232,45 +213,394 @@ public class Diff {
         }
     }
 
-    /** Initialize work stack for lls. */
-    private void initStack() {
-        _todo = new int[6 * (_lines1.size() +  _lines2.size() + 1)];
-        _todop = 0;
-    }
+    /** The state of one comparison of the current sequences.  Lines are
+     *  replaced by small integers, equal iff the lines are, so that
+     *  the algorithms compare ints rather than strings.  The working
+     *  arrays are shared by all levels of the divide-and-conquer
+     *  recursion, so space is linear in the lengths of the sequences. */
+    private class Matcher {
+        /** A comparison of the first N1 and N2 lines of the current
+         *  sequences using ALGORITHM, giving up past _editLimit edits
+         *  iff LIMITED. */
+        Matcher(int n1, int n2, Algorithm algorithm, boolean limited) {
+            HashMap<String, Integer> codes = new HashMap<>();
+            _a = new int[n1];
+            _b = new int[n2];
+            for (int i = 0; i < n1; i += 1) {
+                _a[i] = codes.computeIfAbsent(_lines1.get(i),
+                                              k -> codes.size());
+            }
+            for (int j = 0; j < n2; j += 1) {
+                _b[j] = codes.computeIfAbsent(_lines2.get(j),
+                                              k -> codes.size());
+            }
+            _how = algorithm;
+            _limited = limited && algorithm == Algorithm.MYERS;
+            _offset = n1 + n2 + 1;
+            _forward = new int[2 * _offset + 1];
+            _backward = new int[2 * _offset + 1];
+            if (algorithm != Algorithm.MYERS) {
+                _count1 = new int[codes.size()];
+                _count2 = new int[codes.size()];
+                _last = new int[codes.size()];
+                _previous = new int[n1];
+                Arrays.fill(_last, -1);
+            } else {
+                _count1 = _count2 = _last = _previous = null;
+            }
+        }
 
-    /** Push an item on the work stack for computing lls(I1, I2). STATE
-     *  indicates which inner recursive calls have happened so far for these
-     *  arguments. */
-    private void push(int i1, int i2, int state) {
-        _todo[_todop + 1] = i1;
-        _todo[_todop + 2] = i2;
-        _todo[_todop] = state;
-        _todop += 3;
-    }
+        /** Record a common subsequence of _a[A0 .. A1-1] and
+         *  _b[B0 .. B1-1], appending its runs to _runs iff RECORD.
+         *  Return false, having stopped early, iff the two need more
+         *  edits than _editLimit.  Only the parts before each split
+         *  are matched recursively; the part after it is matched by
+         *  the loop here, so that the depth of recursion does not grow
+         *  with the number of splits. */
+        boolean match(int a0, int a1, int b0, int b1, boolean record) {
+            ArrayList<int[]> ends = null;
+            boolean result = true;
+            _depth += 1;
+            while (true) {
+                int start = 0;
+                while (a0 + start < a1 && b0 + start < b1
+                       && _a[a0 + start] == _b[b0 + start]) {
+                    start += 1;
+                }
+                add(a0, b0, start, record);
+                a0 += start; b0 += start;
+                int end = 0;
+                while (a1 - end > a0 && b1 - end > b0
+                       && _a[a1 - end - 1] == _b[b1 - end - 1]) {
+                    end += 1;
+                }
+                a1 -= end; b1 -= end;
+                if (end > 0) {
+                    if (ends == null) {
+                        ends = new ArrayList<>();
+                    }
+                    ends.add(new int[] { a1, b1, end });
+                }
+                if (a0 >= a1 || b0 >= b1) {
+                    break;
+                }
+                int[] rest = split(a0, a1, b0, b1, record);
+                if (rest == null) {
+                    result = false;
+                    break;
+                } else if (rest.length == 0) {
+                    break;
+                }
+                a0 = rest[0]; b0 = rest[1];
+            }
+            _depth -= 1;
+            if (result && ends != null) {
+                for (int k = ends.size() - 1; k >= 0; k -= 1) {
+                    int[] run = ends.get(k);
+                    add(run[0], run[1], run[2], record);
+                }
+            }
+            return result;
+        }
 
-    /** Pop an item from the work stack. */
-    private void pop() {
-        _todop -= 3;
-        _llsTop1 = _todo[_todop + 1]; _llsTop2 = _todo[_todop + 2];
-        _llsState = _todo[_todop];
-    }
+        /** Record the common subsequence of _a[A0 .. A1-1] and
+         *  _b[B0 .. B1-1], neither empty, up to a split around matches
+         *  chosen by _how, as for match.  Return the start {i, j} of
+         *  the parts _a[i .. A1-1] and _b[j .. B1-1] after the split,
+         *  which are still to be matched, an empty array if there are
+         *  none, or null if the limit set by setEditLimit was passed.
+         *  Beyond MAX_DEPTH levels of recursion, MYERS is used whatever
+         *  _how is, as its recursion is only logarithmically deep. */
+        private int[] split(int a0, int a1, int b0, int b1,
+                            boolean record) {
+            boolean shallow = _depth <= MAX_DEPTH;
+            if (_how == Algorithm.PATIENCE && shallow) {
+                int[] anchors = uniqueAnchors(a0, a1, b0, b1);
+                if (anchors.length > 0) {
+                    int i = a0, j = b0;
+                    for (int k = 0; k < anchors.length; k += 2) {
+                        match(i, anchors[k], j, anchors[k + 1], record);
+                        add(anchors[k], anchors[k + 1], 1, record);
+                        i = anchors[k] + 1;
+                        j = anchors[k + 1] + 1;
+                    }
+                    return new int[] { i, j };
+                }
+            } else if (_how == Algorithm.HISTOGRAM && shallow) {
+                int[] region = rarestRegion(a0, a1, b0, b1);
+                if (region != null && region[2] == 0) {
+                    return NONE;
+                } else if (region != null) {
+                    match(a0, region[0], b0, region[1], record);
+                    add(region[0], region[1], region[2], record);
+                    return new int[] {
+                        region[0] + region[2], region[1] + region[2]
+                    };
+                }
+            }
+            int[] snake = middleSnake(a0, a1, b0, b1);
+            if (snake == null) {
+                return null;
+            }
+            match(a0, snake[0], b0, snake[1], record);
+            add(snake[0], snake[1], snake[2] - snake[0], record);
+            return new int[] { snake[2], snake[3] };
+        }
 
-    /** Return true iff the work stack is empty. */
-    private boolean empty() {
-        return _todop <= 0;
+        /** Return the positions {i0, j0, i1, j1, ...} of the longest
+         *  increasing sequence of matches between the lines that occur
+         *  exactly once in each of _a[A0 .. A1-1] and _b[B0 .. B1-1],
+         *  in order. */
+        private int[] uniqueAnchors(int a0, int a1, int b0, int b1) {
+            for (int i = a0; i < a1; i += 1) {
+                _count1[_a[i]] += 1;
+            }
+            for (int j = b0; j < b1; j += 1) {
+                _count2[_b[j]] += 1;
+                _last[_b[j]] = j;
+            }
+            int[] pos1 = new int[Math.min(a1 - a0, b1 - b0)];
+            int[] pos2 = new int[pos1.length];
+            int n = 0;
+            for (int i = a0; i < a1; i += 1) {
+                if (_count1[_a[i]] == 1 && _count2[_a[i]] == 1) {
+                    pos1[n] = i;
+                    pos2[n] = _last[_a[i]];
+                    n += 1;
+                }
+            }
+            for (int i = a0; i < a1; i += 1) {
+                _count1[_a[i]] = 0;
+            }
+            for (int j = b0; j < b1; j += 1) {
+                _count2[_b[j]] = 0;
+                _last[_b[j]] = -1;
+            }
+
+            int[] tops = new int[n], below = new int[n];
+            int piles = 0;
+            for (int k = 0; k < n; k += 1) {
+                int lo = 0, hi = piles;
+                while (lo < hi) {
+                    int mid = (lo + hi) / 2;
+                    if (pos2[tops[mid]] < pos2[k]) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                below[k] = lo == 0 ? -1 : tops[lo - 1];
+                tops[lo] = k;
+                piles = Math.max(piles, lo + 1);
+            }
+            int[] result = new int[2 * piles];
+            for (int k = piles == 0 ? -1 : tops[piles - 1], r = piles - 1;
+                 k >= 0; k = below[k], r -= 1) {
+                result[2 * r] = pos1[k];
+                result[2 * r + 1] = pos2[k];
+            }
+            return result;
+        }
+
+        /** Return the region {i, j, L} of _a[A0 .. A1-1] and
+         *  _b[B0 .. B1-1] at which L lines match, chosen so that the
+         *  least frequent of its lines in _a occurs as rarely as
+         *  possible, then to be as long as possible, and then to be as
+         *  near the middle of _b[B0 .. B1-1] as possible, so that the
+         *  parts left on either side are balanced.  Lines that
+         *  occur more than MAX_CHAIN times are not used.  Return
+         *  {0, 0, 0} if the two have no lines in common and null if
+         *  all their common lines are too frequent. */
+        private int[] rarestRegion(int a0, int a1, int b0, int b1) {
+            for (int i = a0; i < a1; i += 1) {
+                _count1[_a[i]] += 1;
+                _previous[i] = _last[_a[i]];
+                _last[_a[i]] = i;
+            }
+            int[] best = null;
+            int bestCount = MAX_CHAIN + 1;
+            int mid = b0 + b1, bestSkew = 0;
+            boolean common = false;
+            for (int j = b0; j < b1;) {
+                int code = _b[j], next = j + 1;
+                common |= _count1[code] > 0;
+                if (_count1[code] > 0
+                    && _count1[code] <= Math.min(bestCount, MAX_CHAIN)) {
+                    for (int i = _last[code]; i >= 0; i = _previous[i]) {
+                        int s1 = i, s2 = j, e1 = i + 1, e2 = j + 1;
+                        int count = _count1[code];
+                        while (s1 > a0 && s2 > b0
+                               && _a[s1 - 1] == _b[s2 - 1]) {
+                            s1 -= 1; s2 -= 1;
+                            count = Math.min(count, _count1[_a[s1]]);
+                        }
+                        while (e1 < a1 && e2 < b1 && _a[e1] == _b[e2]) {
+                            count = Math.min(count, _count1[_a[e1]]);
+                            e1 += 1; e2 += 1;
+                        }
+                        int skew = Math.abs(s2 + e2 - mid);
+                        if (count < bestCount
+                            || count == bestCount && (e1 - s1 > best[2]
+                                || e1 - s1 == best[2] && skew < bestSkew)) {
+                            best = new int[] { s1, s2, e1 - s1 };
+                            bestCount = count;
+                            bestSkew = skew;
+                        }
+                        next = Math.max(next, e2);
+                    }
+                }
+                j = next;
+            }
+            for (int i = a0; i < a1; i += 1) {
+                _count1[_a[i]] = 0;
+                _last[_a[i]] = -1;
+            }
+            return common ? best : new int[3];
+        }
+
+        /** Return the middle snake of an optimal edit path from
+         *  (A0, B0) to (A1, B1) as {x, y, u, v}: the diagonal run of
+         *  matches from (x, y) to (u, v).  Return null if this is the
+         *  first snake of a limited comparison and the path needs more
+         *  edits than _editLimit. */
+        private int[] middleSnake(int a0, int a1, int b0, int b1) {
+            int n = a1 - a0, m = b1 - b0;
+            int delta = n - m;
+            boolean odd = (delta & 1) != 0;
+            boolean top = _limited;
+            _limited = false;
+            int[] vf = _forward, vb = _backward;
+            int off = _offset;
+            vf[off + 1] = 0;
+            vb[off + 1] = 0;
+            for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+                if (top && 2 * d - 1 > _editLimit) {
+                    return null;
+                }
+                for (int k = -d; k <= d; k += 2) {
+                    int x;
+                    if (k == -d || k != d
+                        && vf[off + k - 1] < vf[off + k + 1]) {
+                        x = vf[off + k + 1];
+                    } else {
+                        x = vf[off + k - 1] + 1;
+                    }
+                    int y = x - k;
+                    int x0 = x, y0 = y;
+                    while (x < n && y < m && _a[a0 + x] == _b[b0 + y]) {
+                        x += 1; y += 1;
+                    }
+                    vf[off + k] = x;
+                    int c = delta - k;
+                    if (odd && c >= -(d - 1) && c <= d - 1
+                        && x + vb[off + c] >= n) {
+                        return new int[] {
+                            a0 + x0, b0 + y0, a0 + x, b0 + y
+                        };
+                    }
+                }
+                for (int c = -d; c <= d; c += 2) {
+                    int x;
+                    if (c == -d || c != d
+                        && vb[off + c - 1] < vb[off + c + 1]) {
+                        x = vb[off + c + 1];
+                    } else {
+                        x = vb[off + c - 1] + 1;
+                    }
+                    int y = x - c;
+                    int x0 = x, y0 = y;
+                    while (x < n && y < m
+                           && _a[a1 - x - 1] == _b[b1 - y - 1]) {
+                        x += 1; y += 1;
+                    }
+                    vb[off + c] = x;
+                    int k = delta - c;
+                    if (!odd && k >= -d && k <= d
+                        && x + vf[off + k] >= n) {
+                        return new int[] {
+                            a1 - x, b1 - y, a1 - x0, b1 - y0
+                        };
+                    }
+                }
+            }
+            throw new IllegalStateException("no middle snake");
+        }
+
+        /** Note a run of LEN matches starting at A and B, adding it to
+         *  _runs iff RECORD. */
+        private void add(int a, int b, int len, boolean record) {
+            if (len == 0) {
+                return;
+            }
+            _matched += len;
+            if (!record) {
+                return;
+            }
+            int k = _runs.size();
+            if (k > 0 && _runs.get(k - 3) + _runs.get(k - 1) == a
+                && _runs.get(k - 2) + _runs.get(k - 1) == b) {
+                _runs.set(k - 1, _runs.get(k - 1) + len);
+            } else {
+                _runs.add(a);
+                _runs.add(b);
+                _runs.add(len);
+            }
+        }
+
+        /** The lines compared, as codes. */
+        private final int[] _a, _b;
+        /** The algorithm used. */
+        private final Algorithm _how;
+        /** True until the first middle snake of a comparison that gives
+         *  up past _editLimit edits. */
+        private boolean _limited;
+        /** For PATIENCE and HISTOGRAM, the number of times each code
+         *  occurs in the part of _a and of _b being split, and its last
+         *  position in either, all cleared after each split. */
+        private final int[] _count1, _count2, _last;
+        /** For HISTOGRAM, the previous position in _a of the code at
+         *  each position of the part being split, or -1. */
+        private final int[] _previous;
+        /** Furthest x reached on each diagonal, searching forward from
+         *  the start and backward from the end, indexed by diagonal
+         *  plus _offset. */
+        private final int[] _forward, _backward;
+        /** Offset of diagonal 0 in _forward and _backward. */
+        private final int _offset;
+        /** The runs found, as in commonSubsequence. */
+        private final ArrayList<Integer> _runs = new ArrayList<>();
+        /** Number of matches found. */
+        private int _matched;
+        /** Number of calls to match in progress. */
+        private int _depth;
     }
 
+    /** Returned by split when nothing is left to match. */
+    private static final int[] NONE = new int[0];
+
+    /** Deepest recursion of match at which PATIENCE and HISTOGRAM still
+     *  split the sequences their own way. */
+    private static final int MAX_DEPTH = 256;
+
+    /** Lines occurring more often than this in the first sequence are
+     *  not used to split it by HISTOGRAM. */
+    private static final int MAX_CHAIN = 64;
+
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
-    /** The memo table for longest common subsequence.  _lls[a][b] contains the
-     *  length of the longest common sequence of the prefixes of the current
-     *  data sequences of lengths a and b, or -1 if not calculated. */
-    private int[][] _lls;
+    /** The algorithm used by commonSubsequence. */
+    private Algorithm _algorithm = Algorithm.MYERS;
+
+    /** The common runs of the current sequences, as returned by
+     *  commonSubsequence, or null if not computed. */
+    private int[] _common;
+
+    /** The length of the longest common subsequence, valid when
+     *  _common is not null. */
+    private int _commonLength;
 
-    /** A stack structure used by lls. */
-    private int[] _todo;
-    /** Structure for the work queue used by lls. */
-    private int _todop, _llsState, _llsTop1, _llsTop2;
+    /** The most edits to look for, or -1 if there is no limit. */
+    private int _editLimit = -1;
 
 }
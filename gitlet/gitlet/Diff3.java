@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Line-level three-way merges. Both versions of a file are compared
+ *  with their common ancestor, and every change that only one side made
+ *  is applied. Where both sides changed overlapping or touching lines
+ *  differently, both versions of just those lines are written between
+ *  conflict markers. Lines keep their line terminators, so a region
+ *  that spans whole files reads exactly as the files do. Files that are
+ *  not UTF-8 text are not split into lines: if both sides changed one,
+ *  the whole of both versions form a single conflict.
+ *  @author Alex Liang
+ */
+class Diff3 {
+    /** Marker opening the current side of a conflict. */
+    static final String OURS_MARKER = "<<<<<<< HEAD\n";
+
+    /** Marker between the two sides of a conflict. */
+    static final String SEPARATOR = "=======\n";
+
+    /** Marker closing the given side of a conflict. */
+    static final String THEIRS_MARKER = ">>>>>>>\n";
+
+    /** Write the merge of the changes from BASE to OURS and from BASE to
+     *  THEIRS, all lists of lines, to OUT.
+     * @param base
+     * @param ours
+     * @param theirs
+     * @param out
+     * @return true iff there was a conflict
+     * */
+    static boolean merge(List<String> base, List<String> ours,
+                         List<String> theirs, Writer out)
+            throws IOException {
+        int[] ourEdits = edits(base, ours);
+        int[] theirEdits = edits(base, theirs);
+        boolean conflict = false;
+        int copied = 0, ourShift = 0, theirShift = 0;
+        int o = 0, t = 0;
+        while (o < ourEdits.length || t < theirEdits.length) {
+            boolean oursFirst = t >= theirEdits.length
+                || o < ourEdits.length && ourEdits[o] <= theirEdits[t];
+            int lo = oursFirst ? ourEdits[o] : theirEdits[t];
+            int hi = lo;
+            int ourGrowth = 0, theirGrowth = 0;
+            boolean ourChange = false, theirChange = false;
+            while (true) {
+                if (o < ourEdits.length && ourEdits[o] <= hi) {
+                    hi = Math.max(hi, ourEdits[o] + ourEdits[o + 1]);
+                    ourGrowth += ourEdits[o + 3] - ourEdits[o + 1];
+                    ourChange = true;
+                    o += 4;
+                } else if (t < theirEdits.length && theirEdits[t] <= hi) {
+                    hi = Math.max(hi, theirEdits[t] + theirEdits[t + 1]);
+                    theirGrowth += theirEdits[t + 3] - theirEdits[t + 1];
+                    theirChange = true;
+                    t += 4;
+                } else {
+                    break;
+                }
+            }
+
+            write(out, base, copied, lo);
+            List<String> ourLines =
+                ours.subList(lo + ourShift, hi + ourShift + ourGrowth);
+            List<String> theirLines =
+                theirs.subList(lo + theirShift,
+                               hi + theirShift + theirGrowth);
+            if (!theirChange || ourLines.equals(theirLines)) {
+                write(out, ourLines, 0, ourLines.size());
+            } else if (!ourChange) {
+                write(out, theirLines, 0, theirLines.size());
+            } else {
+                out.write(OURS_MARKER);
+                write(out, ourLines, 0, ourLines.size());
+                out.write(SEPARATOR);
+                write(out, theirLines, 0, theirLines.size());
+                out.write(THEIRS_MARKER);
+                conflict = true;
+            }
+            copied = hi;
+            ourShift += ourGrowth;
+            theirShift += theirGrowth;
+        }
+        write(out, base, copied, base.size());
+        return conflict;
+    }
+
+    /** Write the merge of the changes from BASE to OURS and from BASE to
+     *  THEIRS, the contents of three versions of a file, to OUT. Unless
+     *  all three are text, OURS and THEIRS are written whole as one
+     *  conflict.
+     * @param base
+     * @param ours
+     * @param theirs
+     * @param out
+     * @return true iff there was a conflict
+     * */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         OutputStream out) throws IOException {
+        String baseText = text(base), ourText = text(ours),
+            theirText = text(theirs);
+        if (baseText != null && ourText != null && theirText != null) {
+            StringWriter merged = new StringWriter();
+            boolean conflict = merge(lines(baseText), lines(ourText),
+                    lines(theirText), merged);
+            out.write(merged.toString().getBytes(StandardCharsets.UTF_8));
+            return conflict;
+        }
+        out.write(OURS_MARKER.getBytes(StandardCharsets.UTF_8));
+        out.write(ours);
+        out.write(SEPARATOR.getBytes(StandardCharsets.UTF_8));
+        out.write(theirs);
+        out.write(THEIRS_MARKER.getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    /** Return CONTENT decoded as UTF-8 text, or null if it is not valid
+     *  UTF-8 or holds a NUL byte, as binary files do.
+     * @param content
+     * @return text or null
+     * */
+    static String text(byte[] content) {
+        for (byte b : content) {
+            if (b == 0) {
+                return null;
+            }
+        }
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(content)).toString();
+        } catch (CharacterCodingException excp) {
+            return null;
+        }
+    }
+
+    /** Return the lines of TEXT, each with its terminating newline, if
+     *  any.
+     * @param text
+     * @return lines of text
+     * */
+    static List<String> lines(String text) {
+        ArrayList<String> result = new ArrayList<String>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start) + 1;
+            if (end == 0) {
+                end = text.length();
+            }
+            result.add(text.substring(start, end));
+            start = end;
+        }
+        return result;
+    }
+
+    /** Return the edits from BEFORE to AFTER, as Diff.diffs does. */
+    private static int[] edits(List<String> before, List<String> after) {
+        Diff diff = new Diff();
+        diff.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+        diff.setSequences(before, after);
+        return diff.diffs();
+    }
+
+    /** Write LINES[FROM .. TO-1] to OUT. */
+    private static void write(Writer out, List<String> lines, int from,
+                              int to) throws IOException {
+        for (int i = from; i < to; i += 1) {
+            out.write(lines.get(i));
+        }
+    }
+}
@@ -1,83 +1,143 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.LinkedList;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /** The Gitlet class that stores all the information of the version
  *  control system. Any operations are done through a Gitlet object.
+ *  The state of the repository lives in separate small files (the
+ *  refs, HEAD and the staging area), each read only when a command
+ *  first needs it and written back only when it changed.
  *  @author Alex Liang
  */
-public class Gitlet implements Serializable {
+public class Gitlet {
     /** Path to CWD. */
     private static final String CWD = System.getProperty("user.dir") + "/";
 
     /** Path to the `.gitlet` folder. */
     private static final String GITLET_PATH = CWD + ".gitlet/";
 
-    /** Path to the folder that stores all the commits. */
-    private static final String COMMITS_PATH = CWD + ".gitlet/commits/";
-
     /** Path to the folder that stores all staged files. */
     private static final String STAGE_PATH = CWD + ".gitlet/stage/";
 
-    /** Path to the folder that stores all the blobs with ID as filename. */
-    private static final String BLOBS_PATH = CWD + ".gitlet/blobs/";
+    /** Path to the file holding the staging area. */
+    private static final String STAGE_FILE = STAGE_PATH + "index";
+
+    /** Largest number of threads writing files during a checkout. */
+    private static final int CHECKOUT_THREADS =
+        Math.min(8, Runtime.getRuntime().availableProcessors());
+
+    /** Size of the buffers used to read blobs. */
+    private static final int BUFFER_SIZE = 1 << 16;
 
-    /** Max length of hash id. */
-    private static final int ID_LENGTH = 40;
+    /** Largest number of decoded commits kept in COMMITS. */
+    private static final int CACHED_COMMITS = 1024;
+
+    /** Recently loaded commits, by ID. */
+    private static final ObjectCache<Commit> COMMITS =
+        new ObjectCache<Commit>(CACHED_COMMITS);
 
     /** Pointer to the commit that is currently being tracked.
-     * This should be the latest commit. */
+     * This should be the latest commit. Loaded on first use. */
     private Commit _head;
 
-    /** The branch that is currently in. */
+    /** The branch that is currently in, read on first use. */
     private String _currBranch;
 
-    /** The HashMap that stores all the branches created. It is a
-     * mapping from the branch name to the branch's head's hash ID. */
-    private HashMap<String, String> _branchList;
+    /** Staging area of the system, read on first use. */
+    private Stage _stageArea;
 
-    /** The HashMap tha maps abbreviated commit ID's to their
-     * full ID's. HashMap(abbrev., fullID)*/
-    private HashMap<String, String> _commits;
+    /** Stat information of the working files, loaded on first use. */
+    private StatCache _statCache;
 
-    /** Staging area of the system. */
-    private Stage _stageArea;
+    /** The commit graph, loaded on first use. */
+    private CommitGraph _graph;
+
+    /** The index of commit IDs, loaded on first use. */
+    private CommitIndex _commitIndex;
+
+    /** The log of commit messages, loaded on first use. */
+    private CommitLog _commitLog;
+
+    /** The index of commit messages, loaded on first use. */
+    private MessageIndex _messageIndex;
 
-    /** Constructor. */
-    public Gitlet() throws IOException {
+    /** True iff update() leaves the state in memory. */
+    private boolean _deferWrites;
+
+    /** Open the repository in the current directory. Nothing is read
+     *  until it is needed. */
+    public Gitlet() {
+    }
+
+    /** Set up a new repository holding just the initial commit. */
+    public void initialize() throws IOException {
         Commit firstCommit = new Commit();
         storeCommit(firstCommit);
-        _head = firstCommit;
         _currBranch = firstCommit.getBranch();
-        _branchList = new HashMap<String, String>();
-        _branchList.put(_currBranch, _head.getID());
-        _commits = new HashMap<String, String>();
-        _commits.put(firstCommit.getID().substring(0, 5), firstCommit.getID());
+        Refs.setCurrentBranch(getCurrBranch());
+        setHead(firstCommit);
         _stageArea = new Stage();
+        update();
     }
 
-    /** Store the gitlet object. */
-    public void initialize() throws IOException {
-        File gitlet = new File(GITLET_PATH + "gitlet");
-        gitlet.createNewFile();
-        Utils.writeObject(gitlet, this);
-    }
-
-    /** Store a commit object in the folder.
+    /** Store a commit object in the folder. The commit and the objects
+     *  written before it are made durable before any index names it.
      * @param cm
      * */
     public void storeCommit(Commit cm) throws IOException {
-        File newCommit = new File(COMMITS_PATH + cm.getID());
-        newCommit.createNewFile();
-        Utils.writeObject(newCommit, cm);
+        MessageIndex messages = messageIndex();
+        ObjectStore.write(cm.getID(), ObjectStore.COMMIT, cm.encode());
+        Transaction.sync();
+        graph().add(cm);
+        commitIndex().add(cm.getID());
+        messages.add(cm.getMessage(), commitLog().add(cm));
+    }
+
+    /** Return the full ID of the commit whose ID starts with PREFIX.
+     *  Throws a GitletException if there is no such commit or more
+     *  than one.
+     * @param prefix
+     * @return a full commit ID
+     * */
+    private String resolveCommit(String prefix) {
+        List<String> matches = commitIndex().resolve(prefix);
+        if (matches.isEmpty()) {
+            throw Utils.error("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw Utils.error("Ambiguous commit id; it matches:%n%s",
+                    String.join(System.lineSeparator(), matches));
+        }
+        return matches.get(0);
     }
 
     /** Load a commit object from the folder.
@@ -85,71 +145,94 @@ public class Gitlet implements Serializable {
      * @return a Commit object.
      * */
     public Commit loadCommit(String commitID) throws GitletException {
-        File filename = new File(COMMITS_PATH + commitID);
-        if (!filename.exists()) {
+        Commit result = COMMITS.get(commitID);
+        if (result != null) {
+            return result;
+        }
+        if (!ObjectStore.contains(commitID)) {
             throw new GitletException("Commit " + commitID + " doesn't exist");
         }
-        Commit cm = Utils.readObject(filename, Commit.class);
-        return cm;
+        result = Commit.load(commitID);
+        COMMITS.put(commitID, result, 1);
+        return result;
     }
 
-    /** Run the `add` command.
+    /** Run the `add` command. If FILENAME is a directory, every file
+     *  under it is added.
      * @param filename
      * */
     public void add(String filename) {
-        if (_stageArea.getStageRemoval().containsKey(filename)) {
-            _stageArea.unremove(filename);
+        if (new File(filename).isDirectory()) {
+            getStageArea().addAll(filesUnder(filename), getHead(),
+                    statCache());
+        } else if (getStageArea().getStageRemoval()
+                   .containsKey(filename)) {
+            getStageArea().unremove(filename);
         } else {
-            _stageArea.add(filename, _head);
+            getStageArea().add(filename, getHead(), statCache());
         }
 
         update();
     }
 
+    /** Return the paths of all regular files under the directory DIR,
+     *  outside any `.gitlet` folder, in sorted order.
+     * @param dir
+     * @return paths relative to the working directory
+     * */
+    private static List<String> filesUnder(String dir) {
+        ArrayList<String> result = new ArrayList<String>();
+        try {
+            Files.walkFileTree(Path.of(dir).normalize(),
+                    new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path path,
+                            BasicFileAttributes attrs) {
+                        return path.endsWith(".gitlet")
+                            ? FileVisitResult.SKIP_SUBTREE
+                            : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path path,
+                            BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            result.add(path.toString());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s: %s", dir, excp.getMessage());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
     /** Run the `commit` command.
      * @param message
      * */
     public void commit(String message) throws IOException {
-        if (_stageArea.isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+        if (getStageArea().isEmpty()) {
+            throw Utils.error("No changes added to the commit.");
         } else if (message.equals("")) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw Utils.error("Please enter a commit message.");
         }
 
-        HashMap<String, String> parentBlobs = _head.getBlobs();
-
-        HashMap<String, Blob> stageAdd = _stageArea.getStageAdd();
-        HashMap<String, Blob> stageRemoval = _stageArea.getStageRemoval();
-
-        for (Map.Entry<String, Blob> set : stageAdd.entrySet()) {
-            String filename = set.getKey();
-            Blob blob = set.getValue();
-
-            parentBlobs.put(filename, blob.getID());
+        HashMap<String, String> parentBlobs =
+            new HashMap<String, String>(getHead().getBlobs());
 
-            File blobFile = new File(BLOBS_PATH  + blob.getID());
-            blobFile.createNewFile();
-            Utils.writeObject(blobFile, blob);
-        }
-
-        for (Map.Entry<String, Blob> set : stageRemoval.entrySet()) {
-            String filename = set.getKey();
-            parentBlobs.remove(filename);
-        }
+        parentBlobs.putAll(getStageArea().getStageAdd());
+        parentBlobs.keySet().removeAll(
+                getStageArea().getStageRemoval().keySet());
 
         Commit newCommit = new Commit(message, parentBlobs,
-                _head.getID(), _currBranch);
-        File newCommitFile = new File(COMMITS_PATH + newCommit.getID());
-        newCommitFile.createNewFile();
-        Utils.writeObject(newCommitFile, newCommit);
+                getHead().getID(), getCurrBranch());
+        storeCommit(newCommit);
 
-        _head = newCommit;
-        _branchList.put(_currBranch, newCommit.getID());
-        _commits.put(newCommit.getID().substring(0, 5), newCommit.getID());
+        setHead(newCommit);
 
-        _stageArea.clear();
+        getStageArea().clear();
         update();
     }
 
@@ -159,171 +242,360 @@ public class Gitlet implements Serializable {
      * @param filename
      * */
     public void checkout(String commitID, String filename) throws IOException {
-        if (commitID.length() < ID_LENGTH) {
-            boolean found = false;
-            for (String id : _commits.values()) {
-                if (id.contains(commitID)) {
-                    commitID = id;
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                System.out.println("No commit with that id exists.");
-                System.exit(0);
-            }
-        } else {
-            if (!_commits.containsValue(commitID)) {
-                System.out.println("No commit with that id exists.");
-                System.exit(0);
-            }
-        }
+        commitID = resolveCommit(commitID);
 
         Commit commit = getCommit(commitID);
 
         Blob blob = commit.getBlob(filename);
         if (blob == null) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
-        }
-
-        File file = new File(filename);
-        if (!file.exists()) {
-            file.createNewFile();
+            throw Utils.error("File does not exist in that commit.");
         }
 
-        String contents = blob.getContent();
-        Utils.writeContents(file, contents);
+        blob.writeTo(new File(filename));
+        statCache().record(filename, blob.getID());
     }
 
     /** Run the `checkout` command with branch as argument.
      * @param branchName
      * */
     public void checkoutBranch(String branchName) throws IOException {
-        if (!_branchList.containsKey(branchName)) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
-        } else if (branchName.equals(_currBranch)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+        Refs.checkName(branchName);
+        if (!Refs.exists(branchName)) {
+            throw Utils.error("No such branch exists.");
+        } else if (branchName.equals(getCurrBranch())) {
+            throw Utils.error("No need to checkout the current branch.");
         }
         checkUntracked();
 
-        String branchHeadID = _branchList.get(branchName);
-        Commit branchHead = getCommit(branchHeadID);
-        HashMap<String, String> blobs = branchHead.getBlobs();
-        for (Map.Entry<String, String> set : blobs.entrySet()) {
-            String filename = set.getKey();
-            File file = new File(filename);
-            String blobID = set.getValue();
-            Blob blob = getBlob(blobID);
+        Commit branchHead = getCommit(Refs.get(branchName));
+        checkoutFiles(branchHead, Collections.emptySet());
 
-            file.createNewFile();
-            Utils.writeContents(file, blob.getContent());
-        }
+        _currBranch = branchName;
+        Refs.setCurrentBranch(branchName);
+        _head = getCommit(Refs.get(branchName));
+        getStageArea().clear();
+
+        update();
+    }
 
-        HashMap<String, String> oldBlobs = _head.getBlobs();
-        for (Map.Entry<String, String> set : oldBlobs.entrySet()) {
-            String filename = set.getKey();
+    /** Make the working files match the commit TARGET. The files the
+     *  head commit has and TARGET lacks are found by diffing their
+     *  trees and deleted, as are the files in STAGED that TARGET lacks.
+     *  Only the files whose working copy does not already hold the blob
+     *  TARGET has for them are written, in parallel.
+     * @param target
+     * @param staged
+     * */
+    private void checkoutFiles(Commit target, Collection<String> staged) {
+        HashMap<String, String> blobs = target.getBlobs();
+        HashMap<String, String> changes =
+            Tree.diff(getHead().getTree(), target.getTree());
+        for (String filename : staged) {
             if (!blobs.containsKey(filename)) {
-                Utils.restrictedDelete(filename);
+                changes.put(filename, null);
             }
         }
+        for (Map.Entry<String, String> set : changes.entrySet()) {
+            if (set.getValue() == null) {
+                Utils.restrictedDelete(set.getKey());
+                statCache().forget(set.getKey());
+            }
+        }
+        HashMap<String, String> changed = new HashMap<String, String>();
+        for (Map.Entry<String, String> set : blobs.entrySet()) {
+            if (!set.getValue().equals(statCache().idOf(set.getKey()))) {
+                changed.put(set.getKey(), set.getValue());
+            }
+        }
+        writeFiles(changed);
+        for (Map.Entry<String, String> set : changed.entrySet()) {
+            statCache().record(set.getKey(), set.getValue());
+        }
+    }
 
-        _currBranch = branchName;
-        _head = getCommit(_branchList.get(_currBranch));
-        _stageArea.clear();
-
-        update();
+    /** Write each file named in BLOBS with the contents of the blob it
+     *  maps to, on at most CHECKOUT_THREADS threads.
+     * @param blobs
+     * */
+    private static void writeFiles(Map<String, String> blobs) {
+        if (blobs.size() <= 1) {
+            for (Map.Entry<String, String> set : blobs.entrySet()) {
+                ObjectStore.copyTo(set.getValue(), ObjectStore.BLOB,
+                        new File(set.getKey()));
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(CHECKOUT_THREADS, blobs.size()));
+        try {
+            ArrayList<Future<?>> writes = new ArrayList<Future<?>>();
+            for (Map.Entry<String, String> set : blobs.entrySet()) {
+                writes.add(pool.submit(() -> ObjectStore.copyTo(
+                        set.getValue(), ObjectStore.BLOB,
+                        new File(set.getKey()))));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (InterruptedException excp) {
+            throw Utils.error("Checkout interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof GitletException) {
+                throw (GitletException) excp.getCause();
+            }
+            throw new Error("unexpected exception", excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
     }
 
     /** Run the `log` command. */
     public void log() {
-        String curr = _head.getID();
-
-        while (curr != null) {
-            Commit cm = getCommit(curr);
-            String date = cm.getTimeAsString();
-            String message = cm.getMessage();
-
-            System.out.println("===");
-            System.out.println("commit " + curr);
-            System.out.println("Date: " + date);
-            System.out.println(message);
-            System.out.println();
+        log(Integer.MAX_VALUE, Long.MIN_VALUE);
+    }
 
-            curr = cm.getParent();
+    /** Run the `log` command, printing at most LIMIT commits, following
+     *  first parents from the head and stopping at the first commit made
+     *  before SINCE, in milliseconds since the epoch. The walk reads
+     *  parents and times from the commit graph and loads each commit
+     *  only for its message.
+     * @param limit
+     * @param since
+     * */
+    public void log(int limit, long since) {
+        CommitGraph graph = graph();
+        PrintWriter out = outputWriter();
+        int curr = graph.add(getHead());
+        for (int n = 0; n < limit && curr != CommitGraph.NONE
+                 && graph.time(curr) >= since; n += 1) {
+            String id = graph.id(curr);
+            printLogEntry(out, id, graph.time(curr),
+                    loadCommit(id).getMessage());
+            curr = graph.parent(curr);
         }
+        out.flush();
     }
 
-    /** Run the `global-log` command. */
+    /** Run the `global-log` command, streaming the commit log. */
     public void globalLog() {
-        for (String filename : Utils.plainFilenamesIn(COMMITS_PATH)) {
-            File commitFile = new File(COMMITS_PATH + filename);
-            Commit cm = Utils.readObject(commitFile, Commit.class);
-            String date = cm.getTimeAsString();
-            String message = cm.getMessage();
+        PrintWriter out = outputWriter();
+        commitLog().scan(entry -> printLogEntry(out, entry.id(),
+                entry.time(), entry.message()));
+        out.flush();
+    }
 
-            System.out.println("===");
-            System.out.println("commit " + filename);
-            System.out.println("Date: " + date);
-            System.out.println(message);
-            System.out.println();
-        }
+    /** Return a buffered writer on the standard output, which the caller
+     *  must flush.
+     * @return a writer
+     * */
+    private static PrintWriter outputWriter() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                System.out, StandardCharsets.UTF_8)));
+    }
+
+    /** Print the log entry of the commit ID, made at TIME in milliseconds
+     *  since the epoch with MESSAGE, to OUT.
+     * @param out
+     * @param id
+     * @param time
+     * @param message
+     * */
+    private static void printLogEntry(PrintWriter out, String id, long time,
+                                      String message) {
+        out.println("===");
+        out.println("commit " + id);
+        out.println("Date: " + Commit.formatTime(time));
+        out.println(message);
+        out.println();
     }
 
     /** Run the `rm` command.
      * @param filename
      * */
     public void remove(String filename) {
-        if (!_stageArea.contains(filename) && !isTracked(filename)) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+        if (!getStageArea().contains(filename) && !isTracked(filename)) {
+            throw Utils.error("No reason to remove the file.");
         }
 
-        if (_stageArea.contains(filename)) {
-            _stageArea.unstage(filename);
+        if (getStageArea().contains(filename)) {
+            getStageArea().unstage(filename);
         }
 
         if (isTracked(filename)) {
-            String id = _head.getBlobs().get(filename);
-            Blob b = getBlob(id);
-            _stageArea.stageRemove(b);
+            getStageArea().stageRemove(filename,
+                    getHead().getBlobs().get(filename));
             Utils.restrictedDelete(filename);
+            statCache().forget(filename);
         }
 
         update();
     }
 
-    /** Run the `find` command.
+    /** Run the `find` command, printing the IDs of the commits whose
+     *  message is MESSAGE. Only the commits that the message index
+     *  gives for its least common word are read.
      * @param message
      * */
     public void find(String message) {
+        PrintWriter out = outputWriter();
         boolean found = false;
-
-        for (String filename : Utils.plainFilenamesIn(COMMITS_PATH)) {
-            File commitFile = new File(COMMITS_PATH + filename);
-            Commit cm = Utils.readObject(commitFile, Commit.class);
-            if (cm.getMessage().equals(message)) {
-                System.out.println(cm.getID());
+        for (long offset : messageIndex().candidates(message)) {
+            CommitLog.Entry entry = commitLog().read(offset);
+            if (entry.message().equals(message)) {
+                out.println(entry.id());
                 found = true;
             }
         }
+        out.flush();
+        if (!found) {
+            throw Utils.error("Found no commit with that message");
+        }
+    }
 
+    /** Run the `find` command, printing the IDs of the commits whose
+     *  message satisfies MATCHES, in one pass over the commit log.
+     * @param matches
+     * */
+    public void find(Predicate<String> matches) {
+        PrintWriter out = outputWriter();
+        boolean[] found = new boolean[1];
+        commitLog().scan(entry -> {
+            if (matches.test(entry.message())) {
+                out.println(entry.id());
+                found[0] = true;
+            }
+        });
+        out.flush();
+        if (!found[0]) {
+            throw Utils.error("Found no commit with that message");
+        }
+    }
+
+    /** Run the `grep` command, printing COMMIT:PATH for each file that
+     *  contains TEXT in each commit of RANGE, oldest first. RANGE is null
+     *  for all commits, a revision for it and its ancestors, or FROM..TO
+     *  for the ancestors of TO that are not ancestors of FROM, where an
+     *  empty revision is the head. Candidate blobs come from the trigram
+     *  index and are streamed in parallel, each blob at most once.
+     * @param text
+     * @param range
+     * */
+    public void grep(String text, String range) {
+        List<String> commits = commitsIn(range);
+        byte[] needle = text.getBytes(StandardCharsets.UTF_8);
+        TrigramIndex index = TrigramIndex.load();
+        index.update();
+        Set<String> matches = index.candidates(needle).parallelStream()
+            .filter(id -> contains(id, needle))
+            .collect(Collectors.toSet());
+
+        PrintWriter out = outputWriter();
+        boolean found = false;
+        HashMap<String, List<String>> seen =
+            new HashMap<String, List<String>>();
+        for (int i = 0; i < commits.size() && !matches.isEmpty(); i += 1) {
+            String id = commits.get(i);
+            for (String path
+                     : Tree.filesWith(loadCommit(id).getTree(), matches,
+                                      seen)) {
+                out.println(id + ":" + path);
+                found = true;
+            }
+        }
+        out.flush();
         if (!found) {
-            System.out.println("Found no commit with that message");
-            System.exit(0);
+            throw Utils.error("Found no commit with that content");
+        }
+    }
+
+    /** Return the IDs of the commits in RANGE, as for grep, oldest
+     *  first.
+     * @param range
+     * @return commit IDs
+     * */
+    private List<String> commitsIn(String range) {
+        ArrayList<String> result = new ArrayList<String>();
+        if (range == null) {
+            commitLog().scan(entry -> result.add(entry.id()));
+            return result;
+        }
+        CommitGraph graph = graph();
+        int dots = range.indexOf("..");
+        BitSet commits = ancestors(dots < 0 ? range
+                                   : range.substring(dots + 2));
+        if (dots >= 0) {
+            commits.andNot(ancestors(range.substring(0, dots)));
         }
+        for (int pos = commits.nextSetBit(0); pos >= 0;
+             pos = commits.nextSetBit(pos + 1)) {
+            result.add(graph.id(pos));
+        }
+        return result;
+    }
+
+    /** Return the graph positions of the commit named by REVISION, or
+     *  the head if it is empty, and of its ancestors.
+     * @param revision
+     * @return a set of positions
+     * */
+    private BitSet ancestors(String revision) {
+        Commit cm = revision.isEmpty() ? getHead()
+            : loadCommit(resolveRevision(revision));
+        return graph().ancestors(graph().add(cm));
+    }
+
+    /** Return true iff the blob ID contains NEEDLE, reading it as a
+     *  stream a buffer at a time. The last bytes of each buffer are
+     *  kept for the next, so that a match may span two reads.
+     * @param id
+     * @param needle
+     * @return true or false
+     * */
+    private static boolean contains(String id, byte[] needle) {
+        byte[] buf = new byte[Math.max(BUFFER_SIZE, 2 * needle.length)];
+        int kept = 0;
+        try (InputStream in = ObjectStore.open(id, ObjectStore.BLOB)) {
+            int n;
+            while ((n = in.read(buf, kept, buf.length - kept)) > 0) {
+                int end = kept + n;
+                if (contains(buf, end, needle)) {
+                    return true;
+                }
+                kept = Math.min(end, needle.length - 1);
+                System.arraycopy(buf, end - kept, buf, 0, kept);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s: %s", id,
+                    excp.getMessage());
+        }
+        return needle.length == 0;
+    }
+
+    /** Return true iff the first LENGTH bytes of CONTENT contain NEEDLE.
+     * @param content
+     * @param length
+     * @param needle
+     * @return true or false
+     * */
+    private static boolean contains(byte[] content, int length,
+                                    byte[] needle) {
+        outer:
+        for (int i = 0; i + needle.length <= length; i += 1) {
+            for (int j = 0; j < needle.length; j += 1) {
+                if (content[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
     }
 
     /** Run the `find` command. */
     public void status() {
         System.out.println("=== Branches ===");
-        ArrayList<String> branches =
-                new ArrayList<String>(_branchList.keySet());
-        Collections.sort(branches);
-        for (String branch : branches) {
-            if (branch.equals(_currBranch)) {
+        for (String branch : Refs.branches()) {
+            if (branch.equals(getCurrBranch())) {
                 System.out.print("*");
             }
             System.out.println(branch);
@@ -332,15 +604,15 @@ public class Gitlet implements Serializable {
 
         System.out.println("=== Staged Files ===");
         ArrayList<String> stagedFiles =
-                new ArrayList<String>(_stageArea.getStageAdd().keySet());
+                new ArrayList<String>(getStageArea().getStageAdd().keySet());
         Collections.sort(stagedFiles);
         for (String file : stagedFiles) {
             System.out.println(file);
         }
         System.out.println();
 
-        ArrayList<String> removedFiles =
-                new ArrayList<String>(_stageArea.getStageRemoval().keySet());
+        ArrayList<String> removedFiles = new ArrayList<String>(
+                getStageArea().getStageRemoval().keySet());
         Collections.sort(removedFiles);
         System.out.println("=== Removed Files ===");
         for (String file : removedFiles) {
@@ -349,21 +621,168 @@ public class Gitlet implements Serializable {
         System.out.println();
 
         System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String file : unstagedModifications()) {
+            System.out.println(file);
+        }
         System.out.println();
 
         System.out.println("=== Untracked Files ===");
+        for (String file : filesUnder(".")) {
+            if (!getStageArea().contains(file) && (!getHead().contains(file)
+                    || getStageArea().getStageRemoval().containsKey(file))) {
+                System.out.println(file);
+            }
+        }
+        System.out.println();
+        statCache().save();
+    }
+
+    /** Run the `diff` command, printing the changes from the commit
+     *  named by REVISIONS[0], or the head if there is none, to the one
+     *  named by REVISIONS[1], or to the working files if there is none.
+     *  A revision is a branch name or a commit ID. Files are listed in
+     *  name order and their lines are matched using ALGORITHM. Hunks
+     *  have no context lines.
+     * @param algorithm
+     * @param revisions
+     * */
+    public void diff(Diff.Algorithm algorithm, String... revisions) {
+        Commit from = revisions.length > 0
+            ? loadCommit(resolveRevision(revisions[0])) : getHead();
+        Commit to = revisions.length > 1
+            ? loadCommit(resolveRevision(revisions[1])) : null;
+        TreeMap<String, String> changed = new TreeMap<String, String>();
+        if (to != null) {
+            changed.putAll(Tree.diff(from.getTree(), to.getTree()));
+        } else {
+            HashSet<String> tracked =
+                new HashSet<String>(from.getBlobs().keySet());
+            tracked.addAll(getStageArea().getStageAdd().keySet());
+            for (String file : tracked) {
+                String id = statCache().idOf(file);
+                if (!Objects.equals(id, from.getBlobs().get(file))) {
+                    changed.put(file, id);
+                }
+            }
+            statCache().save();
+        }
+
+        Diff diff = new Diff();
+        diff.setAlgorithm(algorithm);
+        for (Map.Entry<String, String> file : changed.entrySet()) {
+            String name = file.getKey();
+            String oldID = from.getBlobs().get(name);
+            diff.setSequences(linesOf(oldID, null),
+                    linesOf(file.getValue(), to == null ? name : null));
+            printDiff(name, oldID != null, file.getValue() != null,
+                    diff);
+        }
+    }
+
+    /** Return the full ID of the commit named by REVISION, the name of a
+     *  branch or a prefix of a commit ID.
+     * @param revision
+     * @return a full commit ID
+     * */
+    private String resolveRevision(String revision) {
+        String id = Refs.get(revision);
+        return id != null ? id : resolveCommit(revision);
+    }
+
+    /** Return the lines of the working file FILENAME, if it is not null,
+     *  or else of the blob ID, or no lines if ID is null.
+     * @param id
+     * @param filename
+     * @return lines of text
+     * */
+    private List<String> linesOf(String id, String filename) {
+        if (id == null) {
+            return Collections.emptyList();
+        } else if (filename != null) {
+            return Utils.readContentsAsString(new File(filename)).lines()
+                .toList();
+        }
+        return getBlob(id).getContent().lines().toList();
+    }
+
+    /** Print the differences found by DIFF in the file NAME, which
+     *  exists before iff BEFORE and after iff AFTER.
+     * @param name
+     * @param before
+     * @param after
+     * @param diff
+     * */
+    private static void printDiff(String name, boolean before,
+                                  boolean after, Diff diff) {
+        System.out.printf("diff --git a/%s b/%s%n", name, name);
+        System.out.println(before ? "--- a/" + name : "--- /dev/null");
+        System.out.println(after ? "+++ b/" + name : "+++ /dev/null");
+        int[] edits = diff.diffs();
+        for (int k = 0; k < edits.length; k += 4) {
+            System.out.printf("@@ -%s +%s @@%n",
+                    hunkRange(edits[k], edits[k + 1]),
+                    hunkRange(edits[k + 2], edits[k + 3]));
+            for (int i = 0; i < edits[k + 1]; i += 1) {
+                System.out.println("-" + diff.get1(edits[k] + i));
+            }
+            for (int i = 0; i < edits[k + 3]; i += 1) {
+                System.out.println("+" + diff.get2(edits[k + 2] + i));
+            }
+        }
+    }
+
+    /** Return the hunk header range of the LENGTH lines starting at line
+     *  START, counting from 0: the first line counting from 1 and the
+     *  length, which is left out when it is 1. An empty range names the
+     *  line before it.
+     * @param start
+     * @param length
+     * @return the range
+     * */
+    private static String hunkRange(int start, int length) {
+        if (length == 0) {
+            return start + ",0";
+        } else if (length == 1) {
+            return String.valueOf(start + 1);
+        }
+        return (start + 1) + "," + length;
+    }
+
+    /** Return the sorted descriptions of the tracked files whose working
+     *  copies differ from what would be committed. Only files whose stat
+     *  changed are hashed.
+     * @return lines of the form "NAME (modified)" or "NAME (deleted)"
+     * */
+    private ArrayList<String> unstagedModifications() {
+        HashMap<String, String> expected =
+            new HashMap<String, String>(getHead().getBlobs());
+        for (String file : getStageArea().getStageRemoval().keySet()) {
+            expected.remove(file);
+        }
+        expected.putAll(getStageArea().getStageAdd());
+        ArrayList<String> result = new ArrayList<String>();
+        for (Map.Entry<String, String> set : expected.entrySet()) {
+            String id = statCache().idOf(set.getKey());
+            if (id == null) {
+                result.add(set.getKey() + " (deleted)");
+            } else if (!id.equals(set.getValue())) {
+                result.add(set.getKey() + " (modified)");
+            }
+        }
+        Collections.sort(result);
+        return result;
     }
 
     /** Run `branch`.
      * @param branchname
      * */
     public void branch(String branchname) {
-        if (_branchList.containsKey(branchname)) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+        Refs.checkName(branchname);
+        if (Refs.exists(branchname)) {
+            throw Utils.error("A branch with that name already exists.");
         }
 
-        _branchList.put(branchname, _head.getID());
+        Refs.set(branchname, getHead().getID());
 
         update();
     }
@@ -372,15 +791,14 @@ public class Gitlet implements Serializable {
      * @param branchname
      * */
     public void removeBranch(String branchname) {
-        if (!_branchList.containsKey(branchname)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
-        } else if (_currBranch.equals(branchname)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+        Refs.checkName(branchname);
+        if (!Refs.exists(branchname)) {
+            throw Utils.error("A branch with that name does not exist.");
+        } else if (getCurrBranch().equals(branchname)) {
+            throw Utils.error("Cannot remove the current branch.");
         }
 
-        _branchList.remove(branchname);
+        Refs.delete(branchname);
 
         update();
     }
@@ -389,39 +807,14 @@ public class Gitlet implements Serializable {
      * @param commitID
      * */
     public void reset(String commitID) throws IOException {
-        if (commitID.length() < ID_LENGTH) {
-            boolean found = false;
-            for (String id : _commits.values()) {
-                if (id.contains(commitID)) {
-                    commitID = id;
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                System.out.println("No commit with that id exists.");
-                System.exit(0);
-            }
-        } else {
-            if (!_commits.containsValue(commitID)) {
-                System.out.println("No commit with that id exists.");
-                System.exit(0);
-            }
-        }
+        commitID = resolveCommit(commitID);
         checkUntracked();
 
         Commit cm = loadCommit(commitID);
-        for (String file : Utils.plainFilenamesIn(CWD)) {
-            if (!cm.contains(file)) {
-                Utils.restrictedDelete(file);
-            } else {
-                checkout(commitID, file);
-            }
-        }
+        checkoutFiles(cm, getStageArea().getStageAdd().keySet());
 
-        _stageArea.clear();
-        _branchList.put(_currBranch, cm.getID());
-        _head = cm;
+        getStageArea().clear();
+        setHead(cm);
 
         update();
     }
@@ -432,51 +825,31 @@ public class Gitlet implements Serializable {
     public void merge(String branchname) throws IOException {
         checkMergeError(branchname);
         checkUntracked();
-        Commit givenHead = loadCommit(_branchList.get(branchname));
-        ArrayList<Commit> known = traverse(givenHead);
-        Commit split = findSplit(known, _head);
-        if (split.equals(_head)) {
+        Commit givenHead = loadCommit(Refs.get(branchname));
+        Commit split = findSplit(givenHead, getHead());
+        if (split.equals(getHead())) {
             checkoutBranch(branchname);
             System.out.println("Current branch fast-forwarded.");
         }
         HashMap<String, String> splitBlobs = split.getBlobs();
-        HashMap<String, String> givenBlobs = givenHead.getBlobs();
-        HashMap<String, String> currentBlobs = _head.getBlobs();
+        HashMap<String, String> currentBlobs = getHead().getBlobs();
         boolean conflict = false;
-        for (String file : givenBlobs.keySet()) {
-            if (split.contains(file)) {
-                if (!givenBlobs.get(file).equals(splitBlobs.get(file))) {
-                    checkout(givenHead.getID(), file);
-                    add(file);
-                }
-            } else {
+        HashMap<String, String> givenChanges =
+            Tree.diff(split.getTree(), givenHead.getTree());
+        for (Map.Entry<String, String> change : givenChanges.entrySet()) {
+            String file = change.getKey();
+            String base = splitBlobs.get(file);
+            String ours = currentBlobs.get(file);
+            String theirs = change.getValue();
+            if (Objects.equals(ours, theirs)) {
+                continue;
+            } else if (Objects.equals(ours, base) && theirs == null) {
+                remove(file);
+            } else if (Objects.equals(ours, base)) {
                 checkout(givenHead.getID(), file);
                 add(file);
-            }
-            conflict = checkConflict1(file, split, givenHead,
-                    currentBlobs, givenBlobs, splitBlobs);
-        }
-        for (String file : splitBlobs.keySet()) {
-            if (_head.contains(file)
-                    && currentBlobs.get(file).equals(splitBlobs.get(file))
-                    && !givenHead.contains(file)) {
-                remove(file);
-            }
-            if (_head.contains(file)
-                    && !currentBlobs.get(file).equals(splitBlobs.get(file))
-                    && !givenHead.contains(file)) {
-                doConflict(file, _head, givenHead);
-                conflict = true;
-            } else if (givenHead.contains(file)
-                    && !givenBlobs.get(file).equals(splitBlobs.get(file))
-                    && !_head.contains(file)) {
-                doConflict(file, _head, givenHead);
-                conflict = true;
-            }
-            if (_head.contains(file) && !givenHead.contains(file)
-                    && !currentBlobs.get(file).equals(splitBlobs.get(file))) {
-                doConflict(file, _head, givenHead);
-                conflict = true;
+            } else {
+                conflict |= mergeFile(file, base, ours, theirs);
             }
         }
         if (conflict) {
@@ -486,171 +859,106 @@ public class Gitlet implements Serializable {
             System.out.println("Given branch is an ancestor "
                     + "of the current branch.");
         }
-        mergeCommit(_currBranch, branchname);
+        mergeCommit(getCurrBranch(), branchname);
         update();
     }
 
     public void mergeCommit(String curr, String given) throws IOException {
-        HashMap<String, String> parentBlobs = _head.getBlobs();
-        HashMap<String, Blob> stageAdd = _stageArea.getStageAdd();
-
-        for (Map.Entry<String, Blob> set : stageAdd.entrySet()) {
-            String filename = set.getKey();
-            Blob blob = set.getValue();
-
-            parentBlobs.put(filename, blob.getID());
-
-            File blobFile = new File(BLOBS_PATH  + blob.getID());
-            blobFile.createNewFile();
-            Utils.writeObject(blobFile, blob);
-        }
+        HashMap<String, String> parentBlobs =
+            new HashMap<String, String>(getHead().getBlobs());
+        parentBlobs.putAll(getStageArea().getStageAdd());
+        parentBlobs.keySet().removeAll(
+                getStageArea().getStageRemoval().keySet());
 
         String message = "Merged " + given + " into " + curr + ".";
         Commit newCommit = new Commit(message, parentBlobs,
-                _head.getID(), _currBranch);
-        newCommit.setMergedParent(_branchList.get(given));
-        File newCommitFile = new File(COMMITS_PATH + newCommit.getID());
-        newCommitFile.createNewFile();
-        Utils.writeObject(newCommitFile, newCommit);
+                getHead().getID(), getCurrBranch());
+        newCommit.setMergedParent(Refs.get(given));
+        storeCommit(newCommit);
 
-        _head = newCommit;
-        _branchList.put(_currBranch, newCommit.getID());
-        _commits.put(newCommit.getID().substring(0, 5), newCommit.getID());
+        setHead(newCommit);
 
-        _stageArea.clear();
+        getStageArea().clear();
         update();
     }
 
-    public boolean checkConflict1(String file, Commit split, Commit givenHead,
-                                  HashMap<String, String> currentBlobs,
-                                  HashMap<String, String> givenBlobs,
-                                  HashMap<String, String> splitBlobs) {
-        boolean conflict = false;
-        if (_head.contains(file) && split.contains(file)
-                && !currentBlobs.get(file).equals(givenBlobs.get(file))
-                && !currentBlobs.get(file).equals(splitBlobs.get(file))
-                && !splitBlobs.get(file).equals(givenBlobs.get(file))) {
-            doConflict(file, _head, givenHead);
-            conflict = true;
-        }
-
-        if (_head.contains(file) && !split.contains(file)
-                && !currentBlobs.get(file).equals(givenBlobs.get(file))) {
-            doConflict(file, _head, givenHead);
-            conflict = true;
-        } else if (!_head.contains(file) && split.contains(file)
-                && !splitBlobs.get(file).equals(givenBlobs.get(file))) {
-            doConflict(file, _head, givenHead);
-            conflict = true;
-        }
-        return conflict;
-    }
-
     public void checkMergeError(String branchname) {
-        if (!_stageArea.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+        Refs.checkName(branchname);
+        if (!getStageArea().isEmpty()) {
+            throw Utils.error("You have uncommitted changes.");
         }
-        if (!_branchList.containsKey(branchname)) {
-            System.out.println("A branch with that name does not exist");
-            System.exit(0);
+        if (!Refs.exists(branchname)) {
+            throw Utils.error("A branch with that name does not exist");
         }
-        if (branchname.equals(_currBranch)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+        if (branchname.equals(getCurrBranch())) {
+            throw Utils.error("Cannot merge a branch with itself.");
         }
     }
 
-    public void doConflict(String filename,
-                           Commit curr, Commit given) {
-        Blob currBlob = curr.getBlob(filename);
-        Blob givenBlob = given.getBlob(filename);
-
-        String currContent = "";
-        String givenContent = "";
-
-        if (currBlob != null) {
-            currContent = currBlob.getContent();
-        }
-
-        if (givenBlob != null) {
-            givenContent = givenBlob.getContent();
-        }
-
-        String newContent = "<<<<<<< HEAD\n";
-        newContent += currContent;
-        newContent += "=======\n";
-        newContent += givenContent;
-        newContent += ">>>>>>>\n";
-
-        File f = new File(filename);
-        Utils.writeContents(f, newContent);
+    /** Merge the changes from the blob BASE to the blobs OURS and
+     *  THEIRS, any of which may be null for a missing file, into the
+     *  working file FILENAME line by line and stage it. Only the lines
+     *  that both sides changed differently are marked as conflicting.
+     *  If any version is not text, the whole file is a conflict. The
+     *  merge is made in memory, and the working file is replaced only
+     *  once it is complete.
+     * @param filename
+     * @param base
+     * @param ours
+     * @param theirs
+     * @return true iff there was a conflict
+     * */
+    private boolean mergeFile(String filename, String base, String ours,
+                              String theirs) throws IOException {
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        boolean conflict = Diff3.merge(blobContent(base), blobContent(ours),
+                blobContent(theirs), merged);
+        replaceFile(new File(filename), merged.toByteArray());
         add(filename);
-
+        return conflict;
     }
 
-    /** Traverse the commit tree.
-     * @param head
-     * @return A ArrayList containing all parent commits
+    /** Return the contents of the blob ID, or no bytes if ID is null.
+     * @param id
+     * @return file contents
      * */
-    public ArrayList<Commit> traverse(Commit head) {
-        ArrayList<Commit> visited = new ArrayList<Commit>();
-        Queue<Commit> q = new LinkedList<Commit>();
-
-        q.add(head);
-        while (!q.isEmpty()) {
-            Commit curr = q.poll();
-            visited.add(curr);
-
-            if (curr.getParent() != null) {
-                Commit parent = loadCommit(curr.getParent());
-                if (!visited.contains(parent)) {
-                    q.add(parent);
-                }
-            }
-
-            if (curr.getMergedParent() != null) {
-                Commit mergedParent = loadCommit(curr.getMergedParent());
-                if (!visited.contains(mergedParent)) {
-                    q.add(mergedParent);
-                }
-            }
-
-        }
-
-        return visited;
+    private byte[] blobContent(String id) {
+        return id == null ? new byte[0] : getBlob(id).getContentAsByte();
     }
 
-    public Commit findSplit(ArrayList<Commit> known, Commit head) {
-        ArrayList<Commit> visited = new ArrayList<Commit>();
-        Queue<Commit> q = new LinkedList<Commit>();
-
-        q.add(head);
-        while (!q.isEmpty()) {
-            Commit curr = q.poll();
-            visited.add(curr);
-
-            if (known.contains(curr)) {
-                return curr;
-            }
-
-            if (curr.getParent() != null) {
-                Commit parent = loadCommit(curr.getParent());
-                if (!visited.contains(parent)) {
-                    q.add(parent);
-                }
-            }
-
-            if (curr.getMergedParent() != null) {
-                Commit mergedParent = loadCommit(curr.getMergedParent());
-                if (!visited.contains(mergedParent)) {
-                    q.add(mergedParent);
-                }
-            }
-
+    /** Replace the working file FILE with CONTENTS, writing them to a
+     *  temporary file beside it first, so that FILE holds either its
+     *  old or its new contents whatever happens.
+     * @param file
+     * @param contents
+     * */
+    private static void replaceFile(File file, byte[] contents)
+            throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = File.createTempFile(".merge-", null, dir);
+        try {
+            Files.write(tmp.toPath(), contents);
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
         }
+    }
 
-        return null;
+    /** Find the split point of two commits: their best common
+     *  ancestor.
+     * @param given
+     * @param head
+     * @return the split point, or null if there is none
+     * */
+    public Commit findSplit(Commit given, Commit head) {
+        CommitGraph graph = graph();
+        int one = graph.add(head);
+        int two = graph.add(given);
+        int split = new MergeBase(graph).find(one, two);
+        return split == CommitGraph.NONE ? null : loadCommit(graph.id(split));
     }
 
     /** Given the id, retrieve the commit.
@@ -658,12 +966,10 @@ public class Gitlet implements Serializable {
      * @return  a Commit object
      * */
     public Commit getCommit(String commitID) throws GitletException {
-        File commitFile = new File(COMMITS_PATH + commitID);
-        if (!commitFile.exists()) {
+        if (!ObjectStore.contains(commitID)) {
             return null;
         }
-        Commit commit = Utils.readObject(commitFile, Commit.class);
-        return commit;
+        return loadCommit(commitID);
     }
 
     /** Given the id, retrieve the blob.
@@ -671,12 +977,7 @@ public class Gitlet implements Serializable {
      * @return a Blob object
      * */
     public Blob getBlob(String blobID) {
-        File blobFile = new File(BLOBS_PATH + blobID);
-        if (!blobFile.exists()) {
-            return null;
-        }
-        Blob blob = Utils.readObject(blobFile, Blob.class);
-        return blob;
+        return Blob.load(null, blobID);
     }
 
     /** Check if a file is tracked by the head commit.
@@ -684,53 +985,155 @@ public class Gitlet implements Serializable {
      * @return true or false
      * */
     public boolean isTracked(String filename) {
-        return _head.contains(filename) || _stageArea.contains(filename);
+        return getHead().contains(filename)
+            || getStageArea().contains(filename);
     }
 
-    /** Check if any files in CWD are untracked. */
+    /** Check if any files in CWD, or in any folder under it, are
+     *  untracked. */
     public void checkUntracked() {
-
-        for (String filename : Utils.plainFilenamesIn(CWD)) {
+        for (String filename : filesUnder(".")) {
             if (!isTracked(filename)) {
-                System.out.println("There is an untracked file in the way; "
+                throw Utils.error("There is an untracked file in the way; "
                         + "delete it, or add and commit it first.");
-                System.exit(0);
             }
         }
     }
 
+    /** Run `gc`, packing all loose objects. */
+    public void gc() {
+        ObjectStore.gc();
+    }
+
     /** Get commit head.
      * @return the latest commit.
      * */
     public Commit getHead() {
+        if (_head == null) {
+            _head = loadCommit(Refs.get(getCurrBranch()));
+        }
         return _head;
     }
 
+    /** Make CM the head of the current branch.
+     * @param cm
+     * */
+    private void setHead(Commit cm) {
+        _head = cm;
+        Refs.set(getCurrBranch(), cm.getID());
+    }
+
     /** Get current branch.
      * @return current branch name.
      * */
     public String getCurrBranch() {
+        if (_currBranch == null) {
+            _currBranch = Refs.currentBranch();
+        }
         return _currBranch;
     }
 
-    /** Get all the branches.
-     * @return a branch list as a hashmap.
-     * */
-    public HashMap<String, String> getBranchList() {
-        return _branchList;
-    }
-
     /** Get the staging area.
      * @return a Stage object.
      * */
     public Stage getStageArea() {
+        if (_stageArea == null) {
+            byte[] contents = Transaction.contents(new File(STAGE_FILE));
+            _stageArea = contents != null
+                ? Utils.deserialize(contents, Stage.class) : new Stage();
+        }
         return _stageArea;
     }
 
-    /** Overwrite the gitlet file to update all the changes
-     * to the Gitlet object. */
+    /** Get the stat cache of the working files.
+     * @return the StatCache of this repository.
+     * */
+    StatCache statCache() {
+        if (_statCache == null) {
+            _statCache = StatCache.load();
+        }
+        return _statCache;
+    }
+
+    /** Get the commit graph.
+     * @return the CommitGraph of this repository.
+     * */
+    CommitGraph graph() {
+        if (_graph == null) {
+            _graph = CommitGraph.load();
+        }
+        return _graph;
+    }
+
+    /** Get the commit ID index.
+     * @return the CommitIndex of this repository.
+     * */
+    CommitIndex commitIndex() {
+        if (_commitIndex == null) {
+            _commitIndex = CommitIndex.load();
+        }
+        return _commitIndex;
+    }
+
+    /** Get the commit log.
+     * @return the CommitLog of this repository.
+     * */
+    CommitLog commitLog() {
+        if (_commitLog == null) {
+            _commitLog = CommitLog.load();
+        }
+        return _commitLog;
+    }
+
+    /** Get the commit message index.
+     * @return the MessageIndex of this repository.
+     * */
+    MessageIndex messageIndex() {
+        if (_messageIndex == null) {
+            _messageIndex = MessageIndex.load(commitLog());
+        }
+        return _messageIndex;
+    }
+
+    /** Keep the staging area and stat cache in memory after each command
+     *  until flush() is called, as when running a batch. */
+    void deferWrites() {
+        _deferWrites = true;
+    }
+
+    /** Write back the parts of the repository state that this command
+     *  loaded and may have changed, unless writes are deferred. Refs are
+     *  written as they move. */
     public void update() {
-        File gitlet = new File(GITLET_PATH + "gitlet");
-        Utils.writeObject(gitlet, this);
+        if (!_deferWrites) {
+            flush();
+        }
+    }
+
+    /** Write back the parts of the repository state that were loaded
+     *  and may have changed. */
+    void flush() {
+        saveStage();
+        statCache().save();
+    }
+
+    /** Hand the staging area, if it was loaded, to the open transaction,
+     *  which writes it at its next sync. */
+    void saveStage() {
+        if (_stageArea != null) {
+            Transaction.replace(new File(STAGE_FILE),
+                    Utils.serialize(_stageArea));
+        }
+    }
+
+    /** Forget the staging area, stat cache, head and current branch held
+     *  in memory, so that they are read again from the repository and
+     *  the open transaction, as when a command of a batch failed part
+     *  way through. */
+    void reload() {
+        _stageArea = null;
+        _statCache = null;
+        _head = null;
+        _currBranch = null;
     }
 }
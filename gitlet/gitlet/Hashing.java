@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** The hash function that names the objects of a repository. A new
+ *  repository may choose SHA-256 instead of SHA-1, and records its
+ *  choice in `.gitlet/hash`; a repository without that file uses
+ *  SHA-1. Each thread keeps one digest per algorithm and resets it for
+ *  every hash, so hashing allocates nothing but the result.
+ *  @author Alex Liang
+ */
+class Hashing {
+    /** CWD. */
+    private static final String CWD = System.getProperty("user.dir") + "/";
+
+    /** Path to the file naming the hash function of the repository. */
+    static final String HASH_PATH = CWD + ".gitlet/hash";
+
+    /** The supported hash functions. */
+    enum Algorithm {
+        /** SHA-1, with 20-byte IDs. */
+        SHA1("SHA-1", 20),
+        /** SHA-256, with 32-byte IDs. */
+        SHA256("SHA-256", 32);
+
+        /** Name of the algorithm in java.security. */
+        private final String _standardName;
+
+        /** Length in bytes of the IDs it makes. */
+        private final int _length;
+
+        /** The algorithm that java.security calls STANDARDNAME, making
+         *  IDs of LENGTH bytes. */
+        Algorithm(String standardName, int length) {
+            _standardName = standardName;
+            _length = length;
+        }
+
+        /** Return the length in bytes of the IDs made by this
+         *  algorithm. */
+        int length() {
+            return _length;
+        }
+
+        /** Return the name used for this algorithm in `.gitlet/hash`
+         *  and on the command line. */
+        String id() {
+            return name().toLowerCase();
+        }
+
+        /** Return the algorithm called NAME, as returned by id(), or
+         *  null if there is none.
+         * @param name
+         * @return an Algorithm or null
+         * */
+        static Algorithm forId(String name) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.id().equals(name)) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** The digests of the current thread, by algorithm. */
+    private static final ThreadLocal<MessageDigest[]> DIGESTS =
+        ThreadLocal.withInitial(() -> {
+            MessageDigest[] result =
+                new MessageDigest[Algorithm.values().length];
+            for (Algorithm algorithm : Algorithm.values()) {
+                try {
+                    result[algorithm.ordinal()] =
+                        MessageDigest.getInstance(algorithm._standardName);
+                } catch (NoSuchAlgorithmException excp) {
+                    throw new IllegalArgumentException("System does not "
+                            + "support " + algorithm._standardName);
+                }
+            }
+            return result;
+        });
+
+    /** The algorithm of the current repository, read on first use. */
+    private static Algorithm _algorithm;
+
+    /** Return the hash function of the current repository. */
+    static synchronized Algorithm algorithm() {
+        if (_algorithm == null) {
+            File file = new File(HASH_PATH);
+            if (!file.isFile()) {
+                _algorithm = Algorithm.SHA1;
+            } else {
+                String name = Utils.readContentsAsString(file).trim();
+                _algorithm = Algorithm.forId(name);
+                if (_algorithm == null) {
+                    throw Utils.error("Unknown hash function %s", name);
+                }
+            }
+        }
+        return _algorithm;
+    }
+
+    /** Make ALGORITHM the hash function of the repository being
+     *  created.
+     * @param algorithm
+     * */
+    static synchronized void setAlgorithm(Algorithm algorithm) {
+        Utils.writeContents(new File(HASH_PATH), algorithm.id() + "\n");
+        _algorithm = algorithm;
+    }
+
+    /** Forget the hash function read so far, as when the repository
+     *  has been replaced. */
+    static synchronized void reload() {
+        _algorithm = null;
+    }
+
+    /** Return the length in bytes of the IDs of the current
+     *  repository. */
+    static int idLength() {
+        return algorithm().length();
+    }
+
+    /** Return the reset digest of the current thread for the hash
+     *  function of the current repository. */
+    static MessageDigest digest() {
+        return digest(algorithm());
+    }
+
+    /** Return the reset digest of the current thread for ALGORITHM.
+     * @param algorithm
+     * @return a MessageDigest
+     * */
+    static MessageDigest digest(Algorithm algorithm) {
+        MessageDigest md = DIGESTS.get()[algorithm.ordinal()];
+        md.reset();
+        return md;
+    }
+
+    /** Return the ID of the concatenation of PARTS.
+     * @param parts
+     * @return hash ID
+     * */
+    static String hash(byte[]... parts) {
+        MessageDigest md = digest();
+        for (byte[] part : parts) {
+            md.update(part);
+        }
+        return Utils.toHex(md.digest());
+    }
+
+    /** Return the ID of the LENGTH bytes of DATA starting at OFFSET.
+     * @param data
+     * @param offset
+     * @param length
+     * @return hash ID
+     * */
+    static String hash(byte[] data, int offset, int length) {
+        MessageDigest md = digest();
+        md.update(data, offset, length);
+        return Utils.toHex(md.digest());
+    }
+
+    /** Return the ID of the bytes remaining in DATA, which is left
+     *  with none remaining.
+     * @param data
+     * @return hash ID
+     * */
+    static String hash(ByteBuffer data) {
+        MessageDigest md = digest();
+        md.update(data);
+        return Utils.toHex(md.digest());
+    }
+}
@@ -1,7 +1,15 @@
 package gitlet;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Alex Liang
@@ -13,17 +21,11 @@ public class Main {
     /** Path to the `.gitlet` folder. */
     private static final String GITLET_PATH = CWD + ".gitlet/";
 
-    /** Path to the Gitlet object stored `.gitlet` folder. */
-    private static final String GITLET_OBJ_PATH = CWD + ".gitlet/gitlet";
-
-    /** Path to the folder that stores all the commits. */
-    private static final String COMMITS_PATH = CWD + ".gitlet/commits/";
-
     /** Path to the folder that stores all staged files. */
     private static final String STAGE_PATH = CWD + ".gitlet/stage/";
 
-    /** Path to the folder that stores all the blobs with ID as filename. */
-    private static final String BLOBS_PATH = CWD + ".gitlet/blobs/";
+    /** Path to the folder that stores all the objects with ID as filename. */
+    private static final String OBJECTS_PATH = CWD + ".gitlet/objects/";
 
     /** Number of arguments. */
     private static final int CHECKOUT_FILE = 3;
@@ -36,7 +38,7 @@ public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains.
      *
-     *  init
+     *  init [--hash sha1 | sha256]
      *
      *  add [file name]
      *
@@ -49,86 +51,172 @@ public class Main {
      *  checkout [commit id] -- [file name]
      *
      *  checkout [branch name]
+     *
+     *  gc
+     *
+     *  daemon [stop]
+     *
+     *  batch [script]
+     *
+     *  While a daemon started with `daemon` is running, commands are
+     *  forwarded to it; otherwise they run in this process. `daemon stop`
+     *  asks the running daemon to finish. A batch read from the standard
+     *  input always runs in this process.
      *  */
     public static void main(String... args) throws IOException {
+        try {
+            if (args.length == 1 && args[0].equals("daemon")) {
+                Daemon.serve();
+            } else if (args.length > 0 && args[0].equals("daemon")) {
+                if (args.length != 2 || !args[1].equals("stop")) {
+                    throw Utils.error("Incorrect operands.");
+                }
+                Daemon.stop();
+            } else if (args.length == 1 && args[0].equals("batch")) {
+                run(args);
+            } else if (!Daemon.forward(args, System.out)) {
+                run(args);
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Run the command ARGS, throwing a GitletException with the message
+     *  to print if it fails. Its writes form one Transaction, which is
+     *  dropped if it fails.
+     * @param args
+     * */
+    static void run(String... args) throws IOException {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
-        }
-        String cmd = args[0];
-        if (!cmd.equals("init")) {
-            File gitletFile = new File(GITLET_OBJ_PATH);
-            if (!gitletFile.exists()) {
-                System.out.println("Not in an initialized Gitlet directory.");
-                System.exit(0);
+            throw Utils.error("Please enter a command.");
+        }
+        Transaction.begin();
+        try {
+            switch (args[0]) {
+            case "init":
+                runInit(args);
+                break;
+            case "batch":
+                runBatch(args);
+                break;
+            default:
+                execute(open(), args);
             }
+            Transaction.commit();
+        } finally {
+            Transaction.abort();
         }
-        switch (cmd) {
-        case "init":
-            initGitlet();
-            break;
+    }
+
+    /** Return the repository in the current directory. */
+    private static Gitlet open() {
+        if (!Refs.initialized()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        return new Gitlet();
+    }
+
+    /** Run the command ARGS other than `init` and `batch` on GITLET.
+     * @param gitlet
+     * @param args
+     * */
+    private static void execute(Gitlet gitlet, String[] args)
+            throws IOException {
+        switch (args[0]) {
         case "add":
-            runAdd(args);
+            runAdd(gitlet, args);
             break;
         case "commit":
-            runCommit(args);
+            runCommit(gitlet, args);
             break;
         case "rm":
-            runRemove(args);
+            runRemove(gitlet, args);
             break;
         case "checkout":
-            runCheckout(args);
+            runCheckout(gitlet, args);
             break;
         case "log":
-            runLog();
+            runLog(gitlet, args);
             break;
         case "global-log":
-            runGlobalLog();
+            runGlobalLog(gitlet);
             break;
         case "find":
-            runFind(args);
+            runFind(gitlet, args);
             break;
         case "status":
-            runStatus();
+            runStatus(gitlet);
             break;
         case "branch":
-            runBranch(args);
+            runBranch(gitlet, args);
             break;
         case "rm-branch":
-            runRemoveBranch(args);
+            runRemoveBranch(gitlet, args);
             break;
         case "reset":
-            runReset(args);
+            runReset(gitlet, args);
             break;
         case "merge":
-            runMerge(args);
+            runMerge(gitlet, args);
+            break;
+        case "diff":
+            runDiff(gitlet, args);
+            break;
+        case "grep":
+            runGrep(gitlet, args);
+            break;
+        case "gc":
+            runGc(gitlet);
             break;
         default:
-            System.out.println("No command with that name exists.");
-            System.exit(0);
+            throw Utils.error("No command with that name exists.");
+        }
+    }
+
+    /** Run `init [--hash sha1 | sha256]`, naming the objects of the
+     *  new repository with the given hash function, SHA-1 by default.
+     * @param args
+     * */
+    public static void runInit(String[] args) throws IOException {
+        Hashing.Algorithm algorithm = Hashing.Algorithm.SHA1;
+        if (args.length == 3 && args[1].equals("--hash")) {
+            algorithm = Hashing.Algorithm.forId(args[2]);
+        } else if (args.length != 1) {
+            algorithm = null;
+        }
+        if (algorithm == null) {
+            throw Utils.error("Incorrect operands.");
         }
-        return;
+        initGitlet(algorithm);
     }
 
     /** Initialize Gitlet in the current directory. This method returns
      * a Gitlet object for testing.
      * */
     public static Gitlet initGitlet() throws IOException {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        if (gitletFile.exists()) {
-            System.out.println("A Gitlet version-control system "
+        return initGitlet(Hashing.Algorithm.SHA1);
+    }
+
+    /** Initialize Gitlet in the current directory, naming objects with
+     *  ALGORITHM.
+     * @param algorithm
+     * @return the new repository
+     * */
+    public static Gitlet initGitlet(Hashing.Algorithm algorithm)
+            throws IOException {
+        if (Refs.initialized()) {
+            throw Utils.error("A Gitlet version-control system "
                     + "already exists in the current directory");
-            System.exit(0);
         }
 
         File gitlet = new File(GITLET_PATH);
         gitlet.mkdir();
         File stage = new File(STAGE_PATH);
         stage.mkdir();
-        File commits = new File(COMMITS_PATH);
-        commits.mkdir();
-        File blobs = new File(BLOBS_PATH);
-        blobs.mkdir();
+        File objects = new File(OBJECTS_PATH);
+        objects.mkdir();
+        Hashing.setAlgorithm(algorithm);
 
         Gitlet gl = new Gitlet();
         gl.initialize();
@@ -137,31 +225,28 @@ public class Main {
     }
 
     /** Run `add` command.
+     * @param gitlet
      * @param args
      * */
-    public static void runAdd(String[] args) {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
+    public static void runAdd(Gitlet gitlet, String[] args) {
         gitlet.add(args[1]);
     }
 
     /** Run `commit` command.
+     * @param gitlet
      * @param args
      * */
-    public static void runCommit(String[] args)
+    public static void runCommit(Gitlet gitlet, String[] args)
             throws IOException {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
         gitlet.commit(args[1]);
     }
 
-    /** Run `commit` command.
+    /** Run `checkout` command.
+     * @param gitlet
      * @param args
      * */
-    public static void runCheckout(String[] args)
+    public static void runCheckout(Gitlet gitlet, String[] args)
             throws IOException {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
 
         switch (args.length) {
         case CHECKOUT_FILE:
@@ -172,71 +257,247 @@ public class Main {
             break;
         case CHECKOUT_COMMIT_FILE:
             if (!args[2].equals("--")) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw Utils.error("Incorrect operands.");
             }
             gitlet.checkout(args[1], args[3]);
             break;
 
         default:
         }
+        gitlet.update();
     }
 
-    /** Run `log` command.
+    /** Run `log` command: `log [-n count] [--since date]`, where the
+     *  date is an ISO date, such as 2024-01-31, or date and time.
+     * @param gitlet
+     * @param args
      * */
-    public static void runLog() throws IOException {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
-        gitlet.log();
+    public static void runLog(Gitlet gitlet, String[] args)
+            throws IOException {
+        int limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw Utils.error("Incorrect operands.");
+                } else if (args[i].equals("-n")) {
+                    limit = Integer.parseInt(args[i + 1]);
+                } else if (args[i].equals("--since")) {
+                    since = Commit.parseTime(args[i + 1]);
+                } else {
+                    throw Utils.error("Incorrect operands.");
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException excp) {
+            throw Utils.error("Incorrect operands.");
+        }
+        gitlet.log(limit, since);
     }
 
-    public static void runGlobalLog() {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
+    public static void runGlobalLog(Gitlet gitlet) {
         gitlet.globalLog();
     }
 
-    public static void runRemove(String[] args) {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
+    public static void runRemove(Gitlet gitlet, String[] args) {
         gitlet.remove(args[1]);
     }
 
-    public static void runFind(String[] args) {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
-        gitlet.find(args[1]);
+    /** Run `find` command: `find [--substring | --regex] message`.
+     *  Without an option the whole message must match.
+     * @param gitlet
+     * @param args
+     * */
+    public static void runFind(Gitlet gitlet, String[] args) {
+        if (args.length == 2) {
+            gitlet.find(args[1]);
+        } else if (args.length == 3 && args[1].equals("--substring")) {
+            gitlet.find(message -> message.contains(args[2]));
+        } else if (args.length == 3 && args[1].equals("--regex")) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(args[2]);
+            } catch (PatternSyntaxException excp) {
+                throw Utils.error("Incorrect operands.");
+            }
+            gitlet.find(message -> pattern.matcher(message).find());
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
     }
 
-    public static void runStatus() {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
+    public static void runStatus(Gitlet gitlet) {
         gitlet.status();
     }
 
-    public static void runBranch(String[] args) {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
+    public static void runBranch(Gitlet gitlet, String[] args) {
         gitlet.branch(args[1]);
     }
 
-    public static void runRemoveBranch(String[] args) {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
+    public static void runRemoveBranch(Gitlet gitlet, String[] args) {
         gitlet.removeBranch(args[1]);
     }
 
-    public static void runReset(String[] args)
+    public static void runReset(Gitlet gitlet, String[] args)
             throws IOException {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
         gitlet.reset(args[1]);
     }
 
-    public static void runMerge(String[] args)
+    public static void runMerge(Gitlet gitlet, String[] args)
             throws IOException {
-        File gitletFile = new File(GITLET_OBJ_PATH);
-        Gitlet gitlet = Utils.readObject(gitletFile, Gitlet.class);
         gitlet.merge(args[1]);
     }
+
+    /** Run `diff` command: `diff [--myers | --patience | --histogram]
+     *  [commit [commit]]`, where each commit is a branch name or a
+     *  commit ID. Histogram matching is the default.
+     * @param gitlet
+     * @param args
+     * */
+    public static void runDiff(Gitlet gitlet, String[] args) {
+        Diff.Algorithm algorithm = Diff.Algorithm.HISTOGRAM;
+        ArrayList<String> revisions = new ArrayList<String>();
+        for (int i = 1; i < args.length; i += 1) {
+            if (!args[i].startsWith("--")) {
+                revisions.add(args[i]);
+                continue;
+            }
+            try {
+                algorithm = Diff.Algorithm.valueOf(
+                    args[i].substring(2).toUpperCase());
+            } catch (IllegalArgumentException excp) {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        if (revisions.size() > 2) {
+            throw Utils.error("Incorrect operands.");
+        }
+        gitlet.diff(algorithm, revisions.toArray(new String[0]));
+    }
+
+    /** Run `grep` command: `grep text [range]`, where the range is a
+     *  commit, taken with its ancestors, or FROM..TO.
+     * @param gitlet
+     * @param args
+     * */
+    public static void runGrep(Gitlet gitlet, String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            throw Utils.error("Incorrect operands.");
+        }
+        gitlet.grep(args[1], args.length == 3 ? args[2] : null);
+    }
+
+    /** Run `gc` command.
+     * @param gitlet
+     * */
+    public static void runGc(Gitlet gitlet) {
+        gitlet.gc();
+    }
+
+    /** Run `batch` command: run the commands in the file ARGS[1], or on
+     *  the standard input if there is no file, one per line, in this
+     *  process. Words are separated by blanks, and a word may be quoted
+     *  with double quotes. Blank lines and lines starting with # are
+     *  skipped. The repository state stays in memory between commands
+     *  and is written at the end and at each `checkpoint` line. A
+     *  failing command prints its message and the batch goes on: the
+     *  objects and ref updates it left pending are dropped, and the
+     *  state in memory is read again as it was before the command. So
+     *  that it can be, the staging area is handed to the transaction
+     *  before each command.
+     * @param args
+     * */
+    public static void runBatch(String[] args) throws IOException {
+        if (args.length > 1 && !new File(args[1]).isFile()) {
+            throw Utils.error("File does not exist.");
+        }
+        BufferedReader script = new BufferedReader(args.length > 1
+                ? new FileReader(args[1])
+                : new InputStreamReader(System.in));
+        Gitlet gitlet = null;
+        try (script) {
+            String line;
+            while ((line = script.readLine()) != null) {
+                if (gitlet != null) {
+                    gitlet.saveStage();
+                }
+                Transaction.Mark mark = Transaction.mark();
+                try {
+                    gitlet = runBatched(gitlet, words(line));
+                } catch (GitletException excp) {
+                    Transaction.rollback(mark);
+                    if (gitlet != null) {
+                        gitlet.reload();
+                    }
+                    System.out.println(excp.getMessage());
+                }
+            }
+        } finally {
+            if (gitlet != null) {
+                gitlet.flush();
+            }
+        }
+    }
+
+    /** Run the command WORDS of a batch on GITLET, which is null until
+     *  the batch opens the repository, and return the repository to use
+     *  for the rest of the batch. */
+    private static Gitlet runBatched(Gitlet gitlet, List<String> words)
+            throws IOException {
+        if (words.isEmpty() || words.get(0).startsWith("#")) {
+            return gitlet;
+        }
+        String[] args = words.toArray(new String[0]);
+        switch (args[0]) {
+        case "init":
+            runInit(args);
+            return null;
+        case "checkpoint":
+            if (gitlet != null) {
+                gitlet.flush();
+            }
+            Transaction.sync();
+            return gitlet;
+        case "batch":
+        case "daemon":
+            throw Utils.error("Cannot run %s in a batch.", args[0]);
+        default:
+            if (gitlet == null) {
+                gitlet = open();
+                gitlet.deferWrites();
+            }
+            execute(gitlet, args);
+            return gitlet;
+        }
+    }
+
+    /** Return the words of LINE. */
+    private static List<String> words(String line) {
+        ArrayList<String> result = new ArrayList<String>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+            } else if (quoted || !Character.isWhitespace(c)) {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                word.append(c);
+            } else if (word != null) {
+                result.add(word.toString());
+                word = null;
+            }
+        }
+        if (quoted) {
+            throw Utils.error("Unterminated quote.");
+        }
+        if (word != null) {
+            result.add(word.toString());
+        }
+        return result;
+    }
 }
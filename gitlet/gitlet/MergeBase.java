@@ -0,0 +1,191 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.PriorityQueue;
+
+/** Computation of the merge base of two commits over a CommitGraph.
+ *  Both commits are painted down toward the roots together, always
+ *  advancing the commit with the largest generation number, so that a
+ *  commit is reached only after all of its descendants. A commit
+ *  painted from both sides is a common ancestor; its own ancestors are
+ *  then marked stale and stop the walk, which ends as soon as only
+ *  stale commits remain. Each commit is visited at most once.
+ *  @author Alex Liang
+ */
+class MergeBase {
+    /** Flag of commits reachable from the first commit. */
+    private static final byte PARENT1 = 1;
+
+    /** Flag of commits reachable from the second commit. */
+    private static final byte PARENT2 = 2;
+
+    /** Flag of commits that are ancestors of a common ancestor. */
+    private static final byte STALE = 4;
+
+    /** Flag of commits reported as common ancestors. */
+    private static final byte RESULT = 8;
+
+    /** The graph walked. */
+    private final CommitGraph _graph;
+
+    /** Flags of each position. */
+    private final byte[] _flags;
+
+    /** Positions currently in the queue. */
+    private final BitSet _queued;
+
+    /** Number of queued positions that are not stale. */
+    private int _live;
+
+    /** A merge-base computation over GRAPH. */
+    MergeBase(CommitGraph graph) {
+        _graph = graph;
+        _flags = new byte[graph.size()];
+        _queued = new BitSet(graph.size());
+    }
+
+    /** Return the best common ancestor of positions ONE and TWO, or
+     *  CommitGraph.NONE if they have none. When there are several
+     *  common ancestors none of which is an ancestor of another (as
+     *  after criss-cross merges), the one with the largest generation
+     *  is chosen, the most recent one among equals.
+     * @param one
+     * @param two
+     * @return position of the merge base
+     * */
+    int find(int one, int two) {
+        int best = CommitGraph.NONE;
+        for (int pos : bases(one, two)) {
+            if (best == CommitGraph.NONE || better(pos, best)) {
+                best = pos;
+            }
+        }
+        return best;
+    }
+
+    /** Return all best common ancestors of ONE and TWO: the common
+     *  ancestors that are not ancestors of another common ancestor.
+     * @param one
+     * @param two
+     * @return positions of the merge bases
+     * */
+    ArrayList<Integer> bases(int one, int two) {
+        ArrayList<Integer> candidates = paint(one, two);
+        if (candidates.size() <= 1) {
+            return candidates;
+        }
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        for (int i = 0; i < candidates.size(); i += 1) {
+            boolean redundant = false;
+            for (int j = 0; j < candidates.size() && !redundant; j += 1) {
+                redundant = i != j && new MergeBase(_graph)
+                    .isAncestor(candidates.get(i), candidates.get(j));
+            }
+            if (!redundant) {
+                result.add(candidates.get(i));
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff ANCESTOR is reachable from POS.
+     * @param ancestor
+     * @param pos
+     * @return true or false
+     * */
+    boolean isAncestor(int ancestor, int pos) {
+        int floor = _graph.generation(ancestor);
+        PriorityQueue<Integer> queue = queue();
+        visit(queue, pos, PARENT1);
+        while (!queue.isEmpty()) {
+            int curr = poll(queue);
+            if (curr == ancestor) {
+                return true;
+            }
+            if (_graph.generation(curr) <= floor) {
+                continue;
+            }
+            visit(queue, _graph.parent(curr), PARENT1);
+            visit(queue, _graph.mergedParent(curr), PARENT1);
+        }
+        return false;
+    }
+
+    /** Paint ONE and TWO down to their common ancestors, and return
+     *  those found that are not stale. */
+    private ArrayList<Integer> paint(int one, int two) {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        if (one == two) {
+            result.add(one);
+            return result;
+        }
+        PriorityQueue<Integer> queue = queue();
+        visit(queue, one, PARENT1);
+        visit(queue, two, PARENT2);
+        while (_live > 0) {
+            int curr = poll(queue);
+            byte flags = (byte) (_flags[curr] & (PARENT1 | PARENT2 | STALE));
+            if (flags == (PARENT1 | PARENT2)) {
+                if ((_flags[curr] & RESULT) == 0) {
+                    _flags[curr] |= RESULT;
+                    result.add(curr);
+                }
+                flags |= STALE;
+            }
+            visit(queue, _graph.parent(curr), flags);
+            visit(queue, _graph.mergedParent(curr), flags);
+        }
+        result.removeIf(pos -> (_flags[pos] & STALE) != 0);
+        return result;
+    }
+
+    /** Add FLAGS to POS, queueing it if it is not queued yet. A commit
+     *  is only polled after all of its descendants, so it is never
+     *  marked again once it has left the queue. */
+    private void visit(PriorityQueue<Integer> queue, int pos, byte flags) {
+        if (pos == CommitGraph.NONE || (_flags[pos] & flags) == flags) {
+            return;
+        }
+        boolean wasStale = (_flags[pos] & STALE) != 0;
+        _flags[pos] |= flags;
+        boolean stale = (_flags[pos] & STALE) != 0;
+        if (!_queued.get(pos)) {
+            _queued.set(pos);
+            queue.add(pos);
+            if (!stale) {
+                _live += 1;
+            }
+        } else if (stale && !wasStale) {
+            _live -= 1;
+        }
+    }
+
+    /** Remove and return the first position of QUEUE. */
+    private int poll(PriorityQueue<Integer> queue) {
+        int pos = queue.poll();
+        _queued.clear(pos);
+        if ((_flags[pos] & STALE) == 0) {
+            _live -= 1;
+        }
+        return pos;
+    }
+
+    /** Return an empty queue yielding the largest generation first. */
+    private PriorityQueue<Integer> queue() {
+        return new PriorityQueue<Integer>((a, b) -> better(a, b) ? -1
+                : better(b, a) ? 1 : 0);
+    }
+
+    /** Return true iff A comes before B: a larger generation, then a
+     *  later time, then a larger position. */
+    private boolean better(int a, int b) {
+        if (_graph.generation(a) != _graph.generation(b)) {
+            return _graph.generation(a) > _graph.generation(b);
+        }
+        if (_graph.time(a) != _graph.time(b)) {
+            return _graph.time(a) > _graph.time(b);
+        }
+        return a > b;
+    }
+}
@@ -0,0 +1,242 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/** An inverted index of commit messages, kept in `.gitlet/message-index`,
+ *  mapping each word of a message to the offsets in the commit log of
+ *  the commits whose messages contain it. A message is split into
+ *  lower-case runs of letters and digits; one without any is indexed
+ *  under the empty word. Words are stored as 64-bit hashes, so the
+ *  commits found for a word must still be checked. Like CommitIndex,
+ *  the file holds a sorted run of (hash, offset) pairs, searched by
+ *  binary search in place, followed by a short unsorted tail that is
+ *  merged into the run once it grows too long.
+ *  @author Alex Liang
+ */
+class MessageIndex {
+    /** CWD. */
+    private static final String CWD = System.getProperty("user.dir") + "/";
+
+    /** Path to the index file. */
+    static final String INDEX_PATH = CWD + ".gitlet/message-index";
+
+    /** Magic number opening the file ("GMIX"). */
+    private static final int MAGIC = 0x474d4958;
+
+    /** Length in bytes of the header. */
+    private static final int HEADER_SIZE = 8;
+
+    /** Length in bytes of one pair. */
+    private static final int PAIR_SIZE = 16;
+
+    /** Fewest unsorted pairs that cause a rewrite. The tail may also
+     *  grow to a sixteenth of the run, so that rewrites cost a constant
+     *  amount per pair added. */
+    private static final int MIN_TAIL = 1024;
+
+    /** The sorted run of pairs. */
+    private ByteBuffer _sorted;
+
+    /** Number of pairs in the sorted run. */
+    private int _sortedCount;
+
+    /** The pairs of the tail, as {hash, offset}, in the order added. */
+    private final ArrayList<long[]> _tail = new ArrayList<long[]>();
+
+    /** An empty index. */
+    private MessageIndex() {
+        _sorted = ByteBuffer.allocate(0);
+    }
+
+    /** Load the message index of the current repository. If it has none
+     *  yet, build it from LOG.
+     * @param log
+     * @return the index
+     * */
+    static MessageIndex load(CommitLog log) {
+        File file = new File(INDEX_PATH);
+        if (!file.isFile()) {
+            MessageIndex result = new MessageIndex();
+            log.scan(entry -> result.addPairs(entry.message(),
+                    entry.offset()));
+            result.rewrite();
+            return result;
+        }
+        Transaction.trimTail(file, HEADER_SIZE, PAIR_SIZE);
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read message index: %s",
+                    excp.getMessage());
+        }
+        if (buf.getInt() != MAGIC) {
+            throw Utils.error("Corrupt message index");
+        }
+        MessageIndex result = new MessageIndex();
+        result._sortedCount = buf.getInt();
+        int tailStart = HEADER_SIZE + result._sortedCount * PAIR_SIZE;
+        result._sorted = buf.slice(HEADER_SIZE, tailStart - HEADER_SIZE);
+        buf.position(tailStart);
+        while (buf.remaining() >= PAIR_SIZE) {
+            result._tail.add(new long[] { buf.getLong(), buf.getLong() });
+        }
+        return result;
+    }
+
+    /** Index MESSAGE as that of the commit at OFFSET in the log.
+     * @param message
+     * @param offset
+     * */
+    void add(String message, long offset) {
+        int first = _tail.size();
+        addPairs(message, offset);
+        if (_tail.size() > Math.max(MIN_TAIL, _sortedCount / 16)) {
+            rewrite();
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                    new FileOutputStream(INDEX_PATH, true)))) {
+            for (long[] pair : _tail.subList(first, _tail.size())) {
+                out.writeLong(pair[0]);
+                out.writeLong(pair[1]);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write message index: %s",
+                    excp.getMessage());
+        }
+        Transaction.written(new File(INDEX_PATH));
+    }
+
+    /** Return the offsets, in increasing order, of the commits that may
+     *  have MESSAGE: those whose messages have its least common word.
+     * @param message
+     * @return offsets in the commit log
+     * */
+    long[] candidates(String message) {
+        long[] result = null;
+        for (String word : words(message)) {
+            long[] offsets = lookup(hash(word));
+            if (result == null || offsets.length < result.length) {
+                result = offsets;
+            }
+        }
+        return result;
+    }
+
+    /** Return the sorted offsets indexed under the word hash KEY. */
+    private long[] lookup(long key) {
+        int lo = 0, hi = _sortedCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_sorted.getLong(mid * PAIR_SIZE) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        ArrayList<Long> result = new ArrayList<Long>();
+        for (int pos = lo; pos < _sortedCount
+                 && _sorted.getLong(pos * PAIR_SIZE) == key; pos += 1) {
+            result.add(_sorted.getLong(pos * PAIR_SIZE + 8));
+        }
+        for (long[] pair : _tail) {
+            if (pair[0] == key) {
+                result.add(pair[1]);
+            }
+        }
+        long[] offsets = new long[result.size()];
+        for (int i = 0; i < offsets.length; i += 1) {
+            offsets[i] = result.get(i);
+        }
+        Arrays.sort(offsets);
+        return offsets;
+    }
+
+    /** Add the pairs of MESSAGE at OFFSET to the tail. */
+    private void addPairs(String message, long offset) {
+        for (String word : words(message)) {
+            _tail.add(new long[] { hash(word), offset });
+        }
+    }
+
+    /** Return the distinct words of MESSAGE, or just the empty word if
+     *  it has none.
+     * @param message
+     * @return words
+     * */
+    static Set<String> words(String message) {
+        LinkedHashSet<String> result = new LinkedHashSet<String>();
+        for (String word
+                 : message.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        if (result.isEmpty()) {
+            result.add("");
+        }
+        return result;
+    }
+
+    /** Return the 64-bit FNV-1a hash of the UTF-8 bytes of WORD. */
+    private static long hash(String word) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : word.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** Merge the tail into the sorted run and write the whole file. */
+    private void rewrite() {
+        _tail.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                   : Long.compare(a[1], b[1]));
+        int count = _sortedCount + _tail.size();
+        ByteBuffer merged = ByteBuffer.allocate(count * PAIR_SIZE);
+        int i = 0, j = 0;
+        while (i < _sortedCount || j < _tail.size()) {
+            if (j == _tail.size() || i < _sortedCount
+                && _sorted.getLong(i * PAIR_SIZE) <= _tail.get(j)[0]) {
+                merged.putLong(_sorted.getLong(i * PAIR_SIZE));
+                merged.putLong(_sorted.getLong(i * PAIR_SIZE + 8));
+                i += 1;
+            } else {
+                merged.putLong(_tail.get(j)[0]);
+                merged.putLong(_tail.get(j)[1]);
+                j += 1;
+            }
+        }
+        _sorted = merged;
+        _sortedCount = count;
+        _tail.clear();
+
+        File tmp = new File(INDEX_PATH + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(count);
+            out.write(merged.array());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write message index: %s",
+                    excp.getMessage());
+        }
+        Transaction.publish(tmp, new File(INDEX_PATH));
+    }
+}
@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** A cache of decoded objects keyed by object ID, evicting the least
+ *  recently used entries once their total weight passes a bound.
+ *  Objects are immutable, so an entry never goes stale.
+ *  @author Alex Liang
+ */
+class ObjectCache<V> {
+    /** The cached entries, least recently used first. */
+    private final LinkedHashMap<String, Entry<V>> _entries =
+        new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+
+    /** Largest total weight kept. */
+    private final long _capacity;
+
+    /** Total weight of the entries. */
+    private long _weight;
+
+    /** Number of lookups that found their entry. */
+    private long _hits;
+
+    /** Number of lookups that did not. */
+    private long _misses;
+
+    /** An empty cache holding at most CAPACITY in total weight. */
+    ObjectCache(long capacity) {
+        _capacity = capacity;
+    }
+
+    /** Return the value cached for ID, or null if there is none.
+     * @param id
+     * @return value or null
+     * */
+    synchronized V get(String id) {
+        Entry<V> entry = _entries.get(id);
+        if (entry == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return entry._value;
+    }
+
+    /** Cache VALUE, of the given WEIGHT, for ID. A value heavier than
+     *  the whole cache is not kept.
+     * @param id
+     * @param value
+     * @param weight
+     * */
+    synchronized void put(String id, V value, long weight) {
+        if (weight > _capacity) {
+            return;
+        }
+        Entry<V> old = _entries.put(id, new Entry<V>(value, weight));
+        _weight += weight - (old == null ? 0 : old._weight);
+        Iterator<Entry<V>> oldest = _entries.values().iterator();
+        while (_weight > _capacity) {
+            _weight -= oldest.next()._weight;
+            oldest.remove();
+        }
+    }
+
+    /** Return the number of lookups that were answered from the cache. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that were not. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of entries cached. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** A cached value and its weight. */
+    private static class Entry<V> {
+        /** The value. */
+        private final V _value;
+
+        /** Its weight. */
+        private final long _weight;
+
+        /** An entry holding VALUE of WEIGHT. */
+        Entry(V value, long weight) {
+            _value = value;
+            _weight = weight;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/** A Bloom filter over the IDs of all stored objects, kept in
+ *  `.gitlet/object-filter`, that tells a writer whether an object may
+ *  already be stored without looking for its loose file or searching
+ *  every pack index. Object IDs are uniformly distributed hashes, so
+ *  the bit positions are taken from the ID itself. The file is a header
+ *  followed by the bit array, and is mapped and updated in place.
+ *  The filter is only a hint: it may miss objects stored by another
+ *  process since it was mapped, or lost in a crash, which at worst
+ *  makes a writer store an object again.
+ *  @author Alex Liang
+ */
+class ObjectFilter {
+    /** CWD. */
+    private static final String CWD = System.getProperty("user.dir") + "/";
+
+    /** Path to the filter file. */
+    static final String FILTER_PATH = CWD + ".gitlet/object-filter";
+
+    /** Magic number opening the file ("GBLM"). */
+    private static final int MAGIC = 0x47424c4d;
+
+    /** Length in bytes of the header: magic, bits set per ID, number of
+     *  IDs and capacity. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Number of bits set per ID. */
+    private static final int HASHES = 7;
+
+    /** Bits of filter per ID it is sized for, which with HASHES bits
+     *  per ID gives under 1% false positives at capacity. */
+    private static final int BITS_PER_ID = 10;
+
+    /** Fewest IDs a new filter is sized for. */
+    private static final int MIN_CAPACITY = 1 << 14;
+
+    /** The mapped file. */
+    private final MappedByteBuffer _file;
+
+    /** The bit array, as a view of _file. */
+    private final LongBuffer _bits;
+
+    /** Number of bits in the filter. */
+    private final long _size;
+
+    /** Number of IDs added that set some new bit. */
+    private int _count;
+
+    /** Number of IDs the filter is sized for. */
+    private final int _capacity;
+
+    /** A filter over FILE, mapped from the filter file. */
+    private ObjectFilter(MappedByteBuffer file) {
+        _file = file;
+        _count = file.getInt(8);
+        _capacity = file.getInt(12);
+        _bits = file.slice(HEADER_SIZE, file.capacity() - HEADER_SIZE)
+            .asLongBuffer();
+        _size = (long) _bits.limit() * 64;
+    }
+
+    /** Load the filter of the current repository. If it has none, or
+     *  it is full, build a new one from the IDs of all stored objects,
+     *  as supplied by ALL.
+     * @param all
+     * @return the filter
+     * */
+    static ObjectFilter load(Supplier<Collection<String>> all) {
+        File file = new File(FILTER_PATH);
+        if (file.isFile()) {
+            ObjectFilter result = map(file);
+            if (result != null && !result.isFull()) {
+                return result;
+            }
+        }
+        Collection<String> ids = all.get();
+        build(file, ids);
+        ObjectFilter result = map(file);
+        if (result == null) {
+            throw Utils.error("Corrupt object filter");
+        }
+        for (String id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    /** Write an empty filter to FILE with room for twice as many IDs as
+     *  IDS holds. */
+    private static void build(File file, Collection<String> ids) {
+        int capacity = Math.max(MIN_CAPACITY, 2 * ids.size());
+        long words = ((long) capacity * BITS_PER_ID + 63) / 64;
+        File tmp = new File(FILTER_PATH + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(HASHES);
+            out.writeInt(0);
+            out.writeInt(capacity);
+            for (long i = 0; i < words; i += 1) {
+                out.writeLong(0);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write object filter: %s",
+                    excp.getMessage());
+        }
+        if (!tmp.renameTo(file)) {
+            throw Utils.error("Cannot write object filter");
+        }
+    }
+
+    /** Return the filter mapped from FILE, or null if FILE is not a
+     *  filter. */
+    private static ObjectFilter map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_SIZE
+                || (channel.size() - HEADER_SIZE) % 8 != 0) {
+                return null;
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE,
+                    0, channel.size());
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != HASHES) {
+                return null;
+            }
+            return new ObjectFilter(buf);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object filter: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Return false if the object ID is certainly not stored, and true
+     *  if it may be.
+     * @param id
+     * @return false or true
+     * */
+    synchronized boolean mayContain(String id) {
+        long h1 = Long.parseUnsignedLong(id.substring(0, 16), 16);
+        long h2 = Long.parseUnsignedLong(id.substring(16, 32), 16) | 1;
+        for (int i = 0; i < HASHES; i += 1) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, _size);
+            if ((_bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Record that the object ID is stored.
+     * @param id
+     * */
+    synchronized void add(String id) {
+        long h1 = Long.parseUnsignedLong(id.substring(0, 16), 16);
+        long h2 = Long.parseUnsignedLong(id.substring(16, 32), 16) | 1;
+        boolean added = false;
+        for (int i = 0; i < HASHES; i += 1) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, _size);
+            int word = (int) (bit >>> 6);
+            long old = _bits.get(word);
+            if ((old & (1L << bit)) == 0) {
+                _bits.put(word, old | (1L << bit));
+                added = true;
+            }
+        }
+        if (added) {
+            _count += 1;
+            _file.putInt(8, _count);
+        }
+    }
+
+    /** Return true iff the filter holds as many IDs as it is sized
+     *  for, and should be rebuilt larger. */
+    synchronized boolean isFull() {
+        return _count >= _capacity;
+    }
+}
@@ -0,0 +1,823 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The content-addressed object store of a Gitlet repository. A new
+ *  object is kept loose in `.gitlet/objects/` under its hash ID as a zlib
+ *  stream. Inflated, the stream holds a typed header of the form
+ *  "TYPE LENGTH\0" followed by LENGTH bytes of raw payload. Objects are
+ *  written to temporary files and named under their IDs by the open
+ *  Transaction, which reads see through before then. The `gc`
+ *  command later moves loose objects into packs (see PackFile); reads
+ *  look in both places.
+ *  @author Alex Liang
+ */
+class ObjectStore {
+    /** CWD. */
+    private static final String CWD = System.getProperty("user.dir") + "/";
+
+    /** Path to the folder that stores all the objects with ID as filename. */
+    static final String OBJECTS_PATH = CWD + ".gitlet/objects/";
+
+    /** Type tag of file contents. */
+    static final String BLOB = "blob";
+
+    /** Type tag of serialized commits. */
+    static final String COMMIT = "commit";
+
+    /** Type tag of directory listings (see Tree). */
+    static final String TREE = "tree";
+
+    /** Path to the log of the IDs of blobs, in the order stored. */
+    static final String BLOB_LOG_PATH = CWD + ".gitlet/blob-log";
+
+    /** Path to the folder holding objects that are being written. */
+    private static final String TMP_PATH = OBJECTS_PATH + "tmp/";
+
+    /** Size of the buffers used to stream file contents. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Longest chain of deltas gc creates. */
+    private static final int MAX_DEPTH = 10;
+
+    /** Largest blob, in bytes, that gc reads whole to store it as a
+     *  delta. Larger blobs are copied into the new pack as they are
+     *  stored, so gc holds at most a few blobs of this size in memory. */
+    private static final long MAX_DELTA_BLOB = 16 << 20;
+
+    /** Largest object file, in bytes, that packPending copies into the
+     *  pack of a command. A larger one is synced on its own, which
+     *  costs less than copying it. */
+    private static final long MAX_PACKED_PENDING = 16 << 20;
+
+    /** Largest payload, in bytes, that can be read whole into an
+     *  array. */
+    private static final long MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    /** Longest header we are willing to parse. */
+    private static final int MAX_HEADER = 64;
+
+    /** Total size in bytes of the payloads kept in the cache. */
+    private static final long CACHE_BYTES = 32L << 20;
+
+    /** Recently read payloads, by type and ID. */
+    private static final ObjectCache<byte[]> CACHE =
+        new ObjectCache<byte[]>(CACHE_BYTES);
+
+    /** The packs of this repository, loaded on first use. */
+    private static List<PackFile> _packs;
+
+    /** The filter of stored object IDs, loaded on first use. */
+    private static ObjectFilter _filter;
+
+    /** Return the header preceding a payload of LENGTH bytes of TYPE. */
+    static byte[] header(String type, long length) {
+        return (type + " " + length + "\0").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return the ID under which CONTENT of type TYPE is stored.
+     * @param type
+     * @param content
+     * @return hash ID
+     * */
+    static String hash(String type, byte[] content) {
+        return Hashing.hash(header(type, content.length), content);
+    }
+
+    /** Return true iff an object with ID is in the store.
+     * @param id
+     * @return true or false
+     * */
+    static boolean contains(String id) {
+        if (loose(id).isFile()) {
+            return true;
+        }
+        for (PackFile pack : packs()) {
+            if (pack.find(id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Store CONTENT of type TYPE under its content hash, unless it is
+     *  already stored.
+     * @param type
+     * @param content
+     * @return the ID of the stored object
+     * */
+    static String write(String type, byte[] content) {
+        String id = hash(type, content);
+        if (!isStored(id)) {
+            write(id, type, content);
+        }
+        return id;
+    }
+
+    /** Return true iff object ID is stored, asking the filter first so
+     *  that an object that is new costs no search. The filter may miss
+     *  an object, in which case it is written again. */
+    private static boolean isStored(String id) {
+        return filter().mayContain(id) && contains(id);
+    }
+
+    /** Store CONTENT of type TYPE under ID, overwriting any previous
+     *  object of that name.
+     * @param id
+     * @param type
+     * @param content
+     * */
+    static void write(String id, String type, byte[] content) {
+        File tmpDir = new File(TMP_PATH);
+        tmpDir.mkdirs();
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("obj-", null, tmpDir);
+            try (OutputStream out = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(
+                            tmp.toPath())))) {
+                out.write(header(type, content.length));
+                out.write(content);
+            }
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw Utils.error("Cannot write object %s: %s", id,
+                    excp.getMessage());
+        }
+        Transaction.add(tmp, new File(OBJECTS_PATH + id));
+        filter().add(id);
+        if (type.equals(BLOB)) {
+            logBlob(id);
+        }
+    }
+
+    /** Store the contents of FILE as an object of type TYPE, streaming
+     *  it through the hash and the compressor in one pass so that FILE
+     *  is read once and memory use does not depend on its size. If its
+     *  contents turn out to be stored already, as when a file is
+     *  reverted or merged to an earlier version, the compressed copy is
+     *  dropped.
+     * @param type
+     * @param file
+     * @return the ID of the stored object
+     * */
+    static String writeFile(String type, File file) {
+        File tmpDir = new File(TMP_PATH);
+        tmpDir.mkdirs();
+        File tmp = null;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long length = channel.size();
+            MessageDigest md = Hashing.digest();
+            md.update(header(type, length));
+            tmp = File.createTempFile("obj-", null, tmpDir);
+            long copied = 0;
+            try (InputStream in = new DigestInputStream(
+                    Channels.newInputStream(channel), md);
+                 OutputStream out = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(
+                            tmp.toPath())))) {
+                out.write(header(type, length));
+                byte[] buf = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    out.write(buf, 0, n);
+                    copied += n;
+                }
+            }
+            if (copied != length) {
+                throw Utils.error("File %s changed while being read",
+                        file.getName());
+            }
+            String id = Utils.toHex(md.digest());
+            if (isStored(id)) {
+                tmp.delete();
+            } else {
+                Transaction.add(tmp, new File(OBJECTS_PATH + id));
+                filter().add(id);
+                if (type.equals(BLOB)) {
+                    logBlob(id);
+                }
+            }
+            return id;
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw Utils.error("Cannot store %s: %s", file.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** Return the ID the contents of FILE would have as an object of type
+     *  TYPE, reading it as a stream without storing it.
+     * @param type
+     * @param file
+     * @return hash ID
+     * */
+    static String hashFile(String type, File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            MessageDigest md = Hashing.digest();
+            md.update(header(type, channel.size()));
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buf) > 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+            return Utils.toHex(md.digest());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot hash %s: %s", file.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** Write the payload of object ID, which must have type TYPE, to
+     *  FILE, creating or replacing it and creating any missing
+     *  directories above it. Whole objects are inflated straight into a
+     *  temporary file next to FILE, which then replaces it, so FILE is
+     *  left as it was if the object is missing or cannot be read.
+     * @param id
+     * @param type
+     * @param file
+     * */
+    static void copyTo(String id, String type, File file) {
+        File loose = loose(id);
+        PackFile pack = null;
+        int pos = -1;
+        if (!loose.isFile()) {
+            for (PackFile candidate : packs()) {
+                pos = candidate.find(id);
+                if (pos >= 0) {
+                    pack = candidate;
+                    break;
+                }
+            }
+            if (pack == null) {
+                throw Utils.error("Object %s doesn't exist", id);
+            }
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(".checkout-", null, dir);
+            try (FileChannel out = FileChannel.open(tmp.toPath(),
+                    StandardOpenOption.WRITE)) {
+                if (pack == null) {
+                    transfer(Files.newInputStream(loose.toPath()), id, type,
+                            out);
+                } else if (pack.isDelta(pos)) {
+                    out.write(ByteBuffer.wrap(pack.read(pos, type)));
+                } else {
+                    transfer(pack.open(pos), id, type, out);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s: %s", file.getName(),
+                    excp.getMessage());
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /** Inflate object ID of type TYPE from the compressed stream RAW
+     *  into OUT. */
+    private static void transfer(InputStream raw, String id, String type,
+                                 FileChannel out) throws IOException {
+        try (InputStream in = new InflaterInputStream(
+                new BufferedInputStream(raw, BUFFER_SIZE))) {
+            long length = Long.parseLong(readHeader(in, id, type)[1]);
+            long copied = out.transferFrom(Channels.newChannel(in), 0, length);
+            if (copied != length) {
+                throw Utils.error("Object %s is truncated", id);
+            }
+        }
+    }
+
+    /** Return the payload of object ID, checking that it has type TYPE.
+     *  Throws a GitletException if there is no such object. Payloads
+     *  are shared with the cache and must not be modified.
+     * @param id
+     * @param type
+     * @return raw payload bytes
+     * */
+    static byte[] read(String id, String type) {
+        byte[] result = CACHE.get(type + " " + id);
+        if (result == null) {
+            result = readStored(id, type);
+            CACHE.put(type + " " + id, result, result.length);
+        }
+        return result;
+    }
+
+    /** Return a stream over the payload of object ID, checking that it
+     *  has type TYPE. A whole object is inflated as the stream is read,
+     *  so objects of any size can be scanned; only a delta, which gc
+     *  makes of small blobs alone, is read into memory first. Payloads
+     *  read this way are not cached.
+     * @param id
+     * @param type
+     * @return the payload as a stream
+     * */
+    static InputStream open(String id, String type) {
+        try {
+            InputStream raw = openWhole(id);
+            if (raw == null) {
+                return new ByteArrayInputStream(readStored(id, type));
+            }
+            InputStream in = new InflaterInputStream(
+                    new BufferedInputStream(raw, BUFFER_SIZE));
+            try {
+                readHeader(in, id, type);
+            } catch (IOException | GitletException excp) {
+                in.close();
+                throw excp;
+            }
+            return in;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s: %s", id,
+                    excp.getMessage());
+        }
+    }
+
+    /** Return the cache of object payloads. */
+    static ObjectCache<byte[]> cache() {
+        return CACHE;
+    }
+
+    /** Return the payload of object ID of type TYPE from disk. */
+    private static byte[] readStored(String id, String type) {
+        File file = loose(id);
+        try {
+            if (file.isFile()) {
+                return readPayload(Files.newInputStream(file.toPath()),
+                        id, type);
+            }
+            for (PackFile pack : packs()) {
+                int pos = pack.find(id);
+                if (pos >= 0) {
+                    return pack.read(pos, type);
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s: %s", id,
+                    excp.getMessage());
+        }
+        throw Utils.error("Object %s doesn't exist", id);
+    }
+
+    /** Return the IDs of all stored objects of type TYPE, loose or
+     *  packed, in sorted order.
+     * @param type
+     * @return sorted IDs
+     * */
+    static List<String> list(String type) {
+        TreeSet<String> result = new TreeSet<String>();
+        for (PackFile pack : packs()) {
+            for (int pos = 0; pos < pack.size(); pos += 1) {
+                if (pack.type(pos).equals(type)) {
+                    result.add(pack.id(pos));
+                }
+            }
+        }
+        ArrayList<String> loose = new ArrayList<String>(
+                Utils.plainFilenamesIn(OBJECTS_PATH));
+        loose.addAll(Transaction.pendingIn(OBJECTS_PATH));
+        for (String id : loose) {
+            if (type.equals(looseType(id))) {
+                result.add(id);
+            }
+        }
+        return new ArrayList<String>(result);
+    }
+
+    /** Return the IDs of the blobs logged as stored, in the order they
+     *  were stored, from the one numbered FIRST on. The log lists a blob
+     *  again if it was stored again, and may list one whose write was
+     *  dropped with its transaction. A repository without a log, made
+     *  before there was one, gets one listing its blobs so far.
+     * @param first
+     * @return blob IDs
+     * */
+    static List<String> blobsSince(int first) {
+        File log = new File(BLOB_LOG_PATH);
+        if (!log.isFile()) {
+            buildBlobLog(log);
+        }
+        int idLength = Hashing.idLength();
+        Transaction.trimTail(log, 0, idLength);
+        ArrayList<String> result = new ArrayList<String>();
+        try (FileChannel channel = FileChannel.open(log.toPath(),
+                StandardOpenOption.READ)) {
+            long start = (long) first * idLength;
+            if (channel.size() <= start) {
+                return result;
+            }
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                    start, channel.size() - start);
+            byte[] id = new byte[idLength];
+            while (buf.remaining() >= idLength) {
+                buf.get(id);
+                result.add(Utils.toHex(id));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read blob log: %s", excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Add the blob ID, just stored, to the log of blobs, creating the
+     *  log if there is none. Blobs may be stored in parallel, so
+     *  appends are serialized. */
+    private static synchronized void logBlob(String id) {
+        File log = new File(BLOB_LOG_PATH);
+        if (!log.isFile()) {
+            buildBlobLog(log);
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(log, true)) {
+            out.write(PackFile.toBytes(id));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write blob log: %s", excp.getMessage());
+        }
+        Transaction.written(log);
+    }
+
+    /** Write LOG listing every blob now stored, pending ones included. */
+    private static void buildBlobLog(File log) {
+        File tmp = new File(BLOB_LOG_PATH + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(tmp))) {
+            for (String id : list(BLOB)) {
+                out.write(PackFile.toBytes(id));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write blob log: %s", excp.getMessage());
+        }
+        Transaction.publish(tmp, log);
+    }
+
+    /** Move every loose object and every existing pack into a single new
+     *  pack, then delete the loose files and old packs. Successive
+     *  versions of each file of at most MAX_DELTA_BLOB bytes are stored
+     *  as deltas against the previous version, with chains at most
+     *  MAX_DEPTH long. A loose object too large for a pack entry stays
+     *  loose. */
+    static void gc() {
+        Transaction.sync();
+        List<PackFile> oldPacks = packs();
+        List<String> loose = Utils.plainFilenamesIn(OBJECTS_PATH);
+        if (loose.isEmpty() && oldPacks.size() <= 1) {
+            return;
+        }
+        HashSet<String> seen = new HashSet<String>();
+        HashMap<String, Integer> depths = new HashMap<String, Integer>();
+        PackFile.Writer writer = new PackFile.Writer();
+        for (Collection<String> versions : fileHistories()) {
+            String base = null;
+            byte[] baseContent = null;
+            for (String id : versions) {
+                if (isLarge(id)) {
+                    base = null;
+                    baseContent = null;
+                    continue;
+                }
+                byte[] content = readStored(id, BLOB);
+                if (seen.add(id)) {
+                    packBlob(writer, id, content, base, baseContent, depths);
+                }
+                base = id;
+                baseContent = content;
+            }
+        }
+        for (PackFile pack : oldPacks) {
+            for (int pos = 0; pos < pack.size(); pos += 1) {
+                String id = pack.id(pos);
+                if (!seen.add(id)) {
+                    continue;
+                } else if (pack.isDelta(pos)) {
+                    writer.add(id, pack.type(pos),
+                            compress(pack.type(pos),
+                                    readStored(id, pack.type(pos))));
+                } else {
+                    writer.add(id, pack.type(pos), pack.entry(pos));
+                }
+            }
+        }
+        ArrayList<String> packed = new ArrayList<String>();
+        for (String id : loose) {
+            File file = new File(OBJECTS_PATH + id);
+            if (file.length() >= Integer.MAX_VALUE) {
+                continue;
+            } else if (seen.add(id)) {
+                writer.addLoose(id, looseType(id), file);
+            }
+            packed.add(id);
+        }
+        File newPack = writer.finish();
+        Transaction.sync();
+        _packs = null;
+        for (String id : packed) {
+            new File(OBJECTS_PATH + id).delete();
+        }
+        for (String name : Utils.plainFilenamesIn(PackFile.PACK_PATH)) {
+            if (!name.startsWith(newPack.getName().replace(".pack", "."))) {
+                new File(PackFile.PACK_PATH + name).delete();
+            }
+        }
+    }
+
+    /** Gather the objects pending in the open Transaction into one new
+     *  pack, so that they are synced as one file rather than one file
+     *  each, unless fewer than two of them are small enough to copy.
+     *  The smallest existing packs are folded into the new one until
+     *  each pack left is at least twice the size of the new one, so
+     *  that packs grow geometrically and their number stays about the
+     *  logarithm of the number of objects. Folded packs are deleted
+     *  once the new one is published. */
+    static void packPending() {
+        ArrayList<String> ids = new ArrayList<String>();
+        long size = 0;
+        for (String id : Transaction.pendingIn(OBJECTS_PATH)) {
+            long length = loose(id).length();
+            if (length <= MAX_PACKED_PENDING) {
+                ids.add(id);
+                size += length;
+            }
+        }
+        if (ids.size() < 2) {
+            return;
+        }
+        ArrayList<PackFile> folded = new ArrayList<PackFile>();
+        ArrayList<PackFile> packs = new ArrayList<PackFile>(packs());
+        packs.sort(Comparator.comparingLong(PackFile::length));
+        for (PackFile pack : packs) {
+            if (pack.length() >= 2 * size) {
+                break;
+            }
+            folded.add(pack);
+            size += pack.length();
+        }
+        HashSet<String> seen = new HashSet<String>();
+        PackFile.Writer writer = new PackFile.Writer();
+        for (String id : ids) {
+            if (seen.add(id)) {
+                writer.addLoose(id, looseType(id), loose(id));
+            }
+        }
+        for (PackFile pack : folded) {
+            for (int pos = 0; pos < pack.size(); pos += 1) {
+                if (seen.add(pack.id(pos))) {
+                    writer.add(pack.id(pos), pack.type(pos), pack.entry(pos));
+                }
+            }
+        }
+        writer.finish();
+        for (String id : ids) {
+            Transaction.drop(OBJECTS_PATH + id);
+        }
+        for (PackFile pack : folded) {
+            pack.deleteAfter();
+        }
+        synchronized (ObjectStore.class) {
+            _packs = null;
+        }
+    }
+
+    /** Return true iff object ID is stored whole with a payload of more
+     *  than MAX_DELTA_BLOB bytes, reading only its header. Deltas are
+     *  only ever made of blobs small enough to read whole. */
+    private static boolean isLarge(String id) {
+        try {
+            InputStream raw = openWhole(id);
+            if (raw == null) {
+                return false;
+            }
+            try (InputStream in = new InflaterInputStream(raw)) {
+                return Long.parseLong(readHeader(in, id, null)[1])
+                    > MAX_DELTA_BLOB;
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s: %s", id,
+                    excp.getMessage());
+        }
+    }
+
+    /** Return the compressed stream of object ID if it is stored whole,
+     *  loose or packed, or null if it is stored as a delta. */
+    private static InputStream openWhole(String id) throws IOException {
+        File file = loose(id);
+        if (file.isFile()) {
+            return Files.newInputStream(file.toPath());
+        }
+        for (PackFile pack : packs()) {
+            int pos = pack.find(id);
+            if (pos >= 0 && pack.isDelta(pos)) {
+                return null;
+            } else if (pos >= 0) {
+                return pack.open(pos);
+            }
+        }
+        throw Utils.error("Object %s doesn't exist", id);
+    }
+
+    /** Add blob ID with CONTENT to WRITER, as a delta against BASE with
+     *  BASECONTENT if BASE is not null, its chain is not too deep, and
+     *  the delta is smaller than the compressed blob. DEPTHS maps each
+     *  packed blob to the length of its delta chain. */
+    private static void packBlob(PackFile.Writer writer, String id,
+                                 byte[] content, String base,
+                                 byte[] baseContent,
+                                 HashMap<String, Integer> depths) {
+        byte[] whole = compress(BLOB, content);
+        int depth = base == null ? MAX_DEPTH : depths.getOrDefault(base, 0);
+        if (depth < MAX_DEPTH) {
+            byte[] delta = Delta.create(baseContent, content);
+            if (delta != null && delta.length < whole.length) {
+                writer.addDelta(id, BLOB, base, delta);
+                depths.put(id, depth + 1);
+                return;
+            }
+        }
+        writer.add(id, BLOB, whole);
+        depths.put(id, 0);
+    }
+
+    /** Return, for each filename ever committed, the IDs of its
+     *  successive versions in order of commit time. */
+    private static Collection<Collection<String>> fileHistories() {
+        ArrayList<Commit> commits = new ArrayList<Commit>();
+        for (String id : list(COMMIT)) {
+            commits.add(Commit.decode(read(id, COMMIT)));
+        }
+        commits.sort(Comparator.comparing(Commit::getTime));
+        HashMap<String, Collection<String>> result =
+            new HashMap<String, Collection<String>>();
+        for (Commit cm : commits) {
+            for (Map.Entry<String, String> blob : cm.getBlobs().entrySet()) {
+                result.computeIfAbsent(blob.getKey(),
+                    k -> new LinkedHashSet<String>()).add(blob.getValue());
+            }
+        }
+        return result.values();
+    }
+
+    /** Return a WHOLE pack entry holding CONTENT of type TYPE. */
+    private static byte[] compress(String type, byte[] content) {
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        entry.write(PackFile.WHOLE);
+        try (OutputStream out = new DeflaterOutputStream(entry)) {
+            out.write(header(type, content.length));
+            out.write(content);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot compress object: %s",
+                    excp.getMessage());
+        }
+        return entry.toByteArray();
+    }
+
+    /** Forget the packs, filter and hash function read so far, so that
+     *  they are read again on next use, as when the repository has been
+     *  replaced. */
+    static synchronized void reload() {
+        _packs = null;
+        _filter = null;
+        Hashing.reload();
+    }
+
+    /** Return the packs of this repository. */
+    private static synchronized List<PackFile> packs() {
+        if (_packs == null) {
+            _packs = PackFile.loadAll();
+        }
+        return _packs;
+    }
+
+    /** Return the filter of stored object IDs, building it from the
+     *  store if it is missing or full. */
+    private static synchronized ObjectFilter filter() {
+        if (_filter == null || _filter.isFull()) {
+            _filter = ObjectFilter.load(ObjectStore::ids);
+        }
+        return _filter;
+    }
+
+    /** Return the IDs of all stored objects, of any type. */
+    private static List<String> ids() {
+        ArrayList<String> result = new ArrayList<String>(
+                Utils.plainFilenamesIn(OBJECTS_PATH));
+        result.addAll(Transaction.pendingIn(OBJECTS_PATH));
+        for (PackFile pack : packs()) {
+            for (int pos = 0; pos < pack.size(); pos += 1) {
+                result.add(pack.id(pos));
+            }
+        }
+        return result;
+    }
+
+    /** Return the file holding the loose object ID, which is still
+     *  temporary if the object was written in the open transaction. */
+    private static File loose(String id) {
+        File pending = Transaction.pending(OBJECTS_PATH + id);
+        return pending != null ? pending : new File(OBJECTS_PATH + id);
+    }
+
+    /** Return the type of the loose object ID. */
+    private static String looseType(String id) {
+        File file = loose(id);
+        try (InputStream in = new InflaterInputStream(
+                Files.newInputStream(file.toPath()))) {
+            return readHeader(in, id, null)[0];
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s: %s", id,
+                    excp.getMessage());
+        }
+    }
+
+    /** Inflate the object ID from the compressed stream RAW, check that
+     *  it has type TYPE, and return its payload. */
+    static byte[] readPayload(InputStream raw, String id,
+                                      String type) throws IOException {
+        try (InputStream in = new InflaterInputStream(
+                new BufferedInputStream(raw))) {
+            long length = Long.parseLong(readHeader(in, id, type)[1]);
+            if (length > MAX_ARRAY) {
+                throw Utils.error("Object %s is too large to read whole",
+                        id);
+            }
+            byte[] content = in.readNBytes((int) length);
+            if (content.length != length) {
+                throw Utils.error("Object %s is truncated", id);
+            }
+            return content;
+        }
+    }
+
+    /** Consume the header of object ID from IN and return its type and
+     *  announced payload length. Unless TYPE is null, check that the
+     *  object has type TYPE. */
+    private static String[] readHeader(InputStream in, String id,
+                                       String type) throws IOException {
+        StringBuilder header = new StringBuilder();
+        int c;
+        while ((c = in.read()) > 0) {
+            if (header.length() == MAX_HEADER) {
+                break;
+            }
+            header.append((char) c);
+        }
+        int space = header.indexOf(" ");
+        if (c != 0 || space < 0) {
+            throw Utils.error("Object %s is corrupt", id);
+        }
+        String[] result = {
+            header.substring(0, space), header.substring(space + 1)
+        };
+        if (type != null && !result[0].equals(type)) {
+            throw Utils.error("Object %s is not a %s", id, type);
+        }
+        try {
+            Long.parseLong(result[1]);
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Object %s is corrupt", id);
+        }
+        return result;
+    }
+}
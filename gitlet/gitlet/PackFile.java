@@ -0,0 +1,571 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** A pack of Gitlet objects and its index. The pack file `pack-X.pack`
+ *  is a header followed by the entries of all its objects back to back.
+ *  A WHOLE entry is a kind byte followed by the same zlib stream a loose
+ *  object file would contain; a DELTA entry is a kind byte, the ID of
+ *  its base object in the same pack, and a zlib stream of a Delta
+ *  against that base. The index `pack-X.idx` holds a fan-out
+ *  table over the first byte of the object IDs, the IDs themselves in
+ *  sorted order, a type code per object and the offset and length of
+ *  each entry, so an object is found with one binary search over a
+ *  mapped file. The pack is mapped in windows of up to a gigabyte as
+ *  they are needed, so it may grow past the 2 GB a single mapping can
+ *  hold; the index, at under 20 bytes per object, must stay below
+ *  that.
+ *  @author Alex Liang
+ */
+class PackFile {
+    /** Path to the folder that stores all the packs. */
+    static final String PACK_PATH = ObjectStore.OBJECTS_PATH + "pack/";
+
+    /** Magic number opening a pack file ("GPAK"). */
+    private static final int PACK_MAGIC = 0x4750414b;
+
+    /** Magic number opening an index file ("GIDX"). */
+    private static final int IDX_MAGIC = 0x47494458;
+
+    /** Format version of packs and indices. */
+    private static final int VERSION = 1;
+
+    /** Number of entries in the fan-out table. */
+    private static final int FANOUT = 256;
+
+    /** Length in bytes of the pack header. */
+    private static final int PACK_HEADER = 8;
+
+    /** Length in bytes of the index header. */
+    private static final int IDX_HEADER = 16;
+
+    /** Kind byte of an entry holding the whole object. */
+    static final byte WHOLE = 0;
+
+    /** Kind byte of an entry holding a delta against another object. */
+    static final byte DELTA = 1;
+
+    /** Length in bytes of each window of a pack mapped at once. An
+     *  entry that crosses from one window into the next is mapped on
+     *  its own. */
+    private static final long WINDOW = 1L << 30;
+
+    /** Total size in bytes of reconstructed bases kept in the cache. */
+    private static final int CACHE_BYTES = 16 << 20;
+
+    /** Object types, indexed by the type code stored in the index. */
+    private static final String[] TYPES = {
+        ObjectStore.BLOB, ObjectStore.COMMIT, ObjectStore.TREE
+    };
+
+    /** The mapped index. */
+    private final MappedByteBuffer _index;
+
+    /** The index file. */
+    private final File _indexFile;
+
+    /** The pack file. */
+    private final File _pack;
+
+    /** Length in bytes of the pack file. */
+    private final long _packSize;
+
+    /** Length in bytes of each window of the pack. */
+    private final long _window;
+
+    /** The windows of the pack mapped so far, by number. */
+    private final MappedByteBuffer[] _windows;
+
+    /** Number of objects in this pack. */
+    private final int _count;
+
+    /** Length in bytes of each object ID in the index. */
+    private final int _idLength;
+
+    /** Position of the sorted IDs in the index. */
+    private final int _idsStart;
+
+    /** Position of the type codes in the index. */
+    private final int _typesStart;
+
+    /** Position of the entry offsets in the index. */
+    private final int _offsetsStart;
+
+    /** Position of the entry lengths in the index. */
+    private final int _lengthsStart;
+
+    /** Recently reconstructed delta bases, by position, least recently
+     *  used first. */
+    private final LinkedHashMap<Integer, byte[]> _bases =
+        new LinkedHashMap<Integer, byte[]>(16, 0.75f, true);
+
+    /** Total size of the values in _bases. */
+    private long _basesSize;
+
+    /** The pack whose index is INDEX and whose entries are in PACK. */
+    PackFile(File index, File pack) {
+        this(index, pack, WINDOW);
+    }
+
+    /** The pack whose index is INDEX and whose entries are in PACK,
+     *  mapped in windows of WINDOW bytes. */
+    PackFile(File index, File pack, long window) {
+        if (index.length() > Integer.MAX_VALUE) {
+            throw Utils.error("Pack %s has too many objects", pack.getName());
+        }
+        _index = map(index, 0, index.length());
+        _indexFile = index;
+        _pack = pack;
+        _packSize = pack.length();
+        _window = window;
+        _windows = new MappedByteBuffer[
+            (int) ((_packSize + window - 1) / window)];
+        if (_index.getInt(0) != IDX_MAGIC || _index.getInt(4) != VERSION
+                || _packSize < PACK_HEADER
+                || window(0).getInt(0) != PACK_MAGIC) {
+            throw Utils.error("Pack %s is corrupt", pack.getName());
+        }
+        _idLength = _index.getInt(8);
+        _count = _index.getInt(12);
+        _idsStart = IDX_HEADER + FANOUT * 4;
+        _typesStart = _idsStart + _count * _idLength;
+        _offsetsStart = _typesStart + _count;
+        _lengthsStart = _offsetsStart + 8 * _count;
+    }
+
+    /** Return all packs in the repository, in name order. */
+    static List<PackFile> loadAll() {
+        List<PackFile> result = new ArrayList<PackFile>();
+        List<String> names = Utils.plainFilenamesIn(PACK_PATH);
+        if (names == null) {
+            return result;
+        }
+        for (String name : names) {
+            if (name.endsWith(".idx")) {
+                String base = name.substring(0, name.length() - 4);
+                File pack = new File(PACK_PATH + base + ".pack");
+                if (pack.isFile()) {
+                    result.add(new PackFile(new File(PACK_PATH + name),
+                            pack));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the length in bytes of the pack file. */
+    long length() {
+        return _packSize;
+    }
+
+    /** Delete the pack and its index once the files now pending in the
+     *  open Transaction are published. */
+    void deleteAfter() {
+        Transaction.deleteAfter(_pack);
+        Transaction.deleteAfter(_indexFile);
+    }
+
+    /** Return the number of objects in this pack. */
+    int size() {
+        return _count;
+    }
+
+    /** Return the position of the object with ID in this pack, or -1
+     *  if it is not here. */
+    int find(String id) {
+        if (id.length() != 2 * _idLength) {
+            return -1;
+        }
+        byte[] key = toBytes(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : _index.getInt(IDX_HEADER + 4 * first - 4);
+        int hi = _index.getInt(IDX_HEADER + 4 * first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the ID of the object at POS. */
+    String id(int pos) {
+        byte[] id = new byte[_idLength];
+        _index.get(_idsStart + pos * _idLength, id);
+        return Utils.toHex(id);
+    }
+
+    /** Return the type of the object at POS. */
+    String type(int pos) {
+        return TYPES[_index.get(_typesStart + pos)];
+    }
+
+    /** Return the whole entry, kind byte included, of the object at POS. */
+    ByteBuffer entry(int pos) {
+        long start = _index.getLong(_offsetsStart + 8 * pos);
+        int length = _index.getInt(_lengthsStart + 4 * pos);
+        if (start < PACK_HEADER || start + length > _packSize) {
+            throw Utils.error("Pack %s is corrupt", _pack.getName());
+        }
+        int number = (int) (start / _window);
+        long offset = start - number * _window;
+        if (offset + length <= _window) {
+            return window(number).slice((int) offset, length);
+        }
+        return map(_pack, start, length);
+    }
+
+    /** Return window NUMBER of the pack, mapping it if need be. */
+    private synchronized MappedByteBuffer window(int number) {
+        if (_windows[number] == null) {
+            long start = number * _window;
+            _windows[number] = map(_pack, start,
+                    Math.min(_window, _packSize - start));
+        }
+        return _windows[number];
+    }
+
+    /** Return a stream over the compressed object at POS, which must be
+     *  a WHOLE entry. */
+    InputStream open(int pos) {
+        ByteBuffer entry = entry(pos);
+        if (entry.get(0) != WHOLE) {
+            throw Utils.error("Object %s is not stored whole", id(pos));
+        }
+        return new BufferInputStream(entry.slice(1, entry.limit() - 1));
+    }
+
+    /** Return true iff the object at POS is stored as a delta. */
+    boolean isDelta(int pos) {
+        return entry(pos).get(0) == DELTA;
+    }
+
+    /** Return the payload of the object at POS, which must have type
+     *  TYPE, undoing any delta chain. */
+    byte[] read(int pos, String type) throws IOException {
+        ByteBuffer entry = entry(pos);
+        switch (entry.get(0)) {
+        case WHOLE:
+            return ObjectStore.readPayload(open(pos), id(pos), type);
+        case DELTA:
+            if (!type(pos).equals(type)) {
+                throw Utils.error("Object %s is not a %s", id(pos), type);
+            }
+            byte[] baseID = new byte[_idLength];
+            entry.get(1, baseID);
+            int basePos = find(Utils.toHex(baseID));
+            if (basePos < 0) {
+                throw Utils.error("Base of object %s is missing", id(pos));
+            }
+            byte[] base = readBase(basePos, type);
+            int start = 1 + _idLength;
+            byte[] delta = new InflaterInputStream(new BufferInputStream(
+                    entry.slice(start, entry.limit() - start)))
+                    .readAllBytes();
+            return Delta.apply(base, delta);
+        default:
+            throw Utils.error("Object %s has an unknown entry kind", id(pos));
+        }
+    }
+
+    /** Return the payload of the delta base at POS, which must have type
+     *  TYPE, using and filling the cache of reconstructed bases. */
+    private synchronized byte[] readBase(int pos, String type)
+            throws IOException {
+        byte[] result = _bases.get(pos);
+        if (result == null) {
+            result = read(pos, type);
+            _bases.put(pos, result);
+            _basesSize += result.length;
+            Iterator<byte[]> oldest = _bases.values().iterator();
+            while (_basesSize > CACHE_BYTES && oldest.hasNext()) {
+                _basesSize -= oldest.next().length;
+                oldest.remove();
+            }
+        }
+        return result;
+    }
+
+    /** Compare the ID at POS with KEY as unsigned bytes. */
+    private int compareId(int pos, byte[] key) {
+        int start = _idsStart + pos * _idLength;
+        for (int i = 0; i < _idLength; i += 1) {
+            int cmp = (_index.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the type code of TYPE. */
+    private static byte typeCode(String type) {
+        for (int i = 0; i < TYPES.length; i += 1) {
+            if (TYPES[i].equals(type)) {
+                return (byte) i;
+            }
+        }
+        throw Utils.error("Unknown object type %s", type);
+    }
+
+    /** Return the bytes denoted by the hexadecimal string HEX. */
+    static byte[] toBytes(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) ((Character.digit(hex.charAt(2 * i), 16) << 4)
+                    | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
+    /** Map the SIZE bytes of FILE starting at START read-only into
+     *  memory. */
+    private static MappedByteBuffer map(File file, long start, long size) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot open pack %s: %s", file.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** An object waiting to be indexed by a Writer. */
+    private static class Slot implements Comparable<Slot> {
+        /** Object ID. */
+        private final String _id;
+        /** Type code. */
+        private final byte _type;
+        /** Offset of the entry in the pack. */
+        private final long _offset;
+        /** Length of the entry in bytes. */
+        private final int _length;
+
+        /** A slot for object ID of type code TYPE whose entry is LENGTH
+         *  bytes at OFFSET. */
+        Slot(String id, byte type, long offset, int length) {
+            _id = id;
+            _type = type;
+            _offset = offset;
+            _length = length;
+        }
+
+        @Override
+        public int compareTo(Slot other) {
+            return _id.compareTo(other._id);
+        }
+    }
+
+    /** Builds a new pack and its index out of entries added one at a
+     *  time, in any order. */
+    static class Writer {
+        /** Temporary name of the pack being written. */
+        private final File _tmp;
+
+        /** Output to the pack being written. */
+        private final DataOutputStream _out;
+
+        /** Objects added so far. */
+        private final ArrayList<Slot> _slots = new ArrayList<Slot>();
+
+        /** Offset of the next entry. */
+        private long _offset;
+
+        /** A writer for a new pack in the pack folder. */
+        Writer() {
+            new File(PACK_PATH).mkdirs();
+            try {
+                _tmp = File.createTempFile("tmp-", ".pack",
+                        new File(PACK_PATH));
+                _out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(_tmp.toPath())));
+                _out.writeInt(PACK_MAGIC);
+                _out.writeInt(VERSION);
+                _offset = PACK_HEADER;
+            } catch (IOException excp) {
+                throw Utils.error("Cannot create pack: %s",
+                        excp.getMessage());
+            }
+        }
+
+        /** Return the number of objects added so far. */
+        int size() {
+            return _slots.size();
+        }
+
+        /** Add the object ID of type TYPE whose entry is ENTRY, copying
+         *  it a buffer at a time. */
+        void add(String id, String type, ByteBuffer entry) {
+            int length = entry.remaining();
+            try {
+                Channels.newChannel(_out).write(entry.duplicate());
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write pack: %s", excp.getMessage());
+            }
+            _slots.add(new Slot(id, typeCode(type), _offset, length));
+            _offset += length;
+        }
+
+        /** Add the object ID of type TYPE stored in the loose object file
+         *  LOOSE, which holds the zlib stream of a WHOLE entry and must
+         *  be shorter than Integer.MAX_VALUE bytes. The file is copied
+         *  a buffer at a time. */
+        void addLoose(String id, String type, File loose) {
+            try (InputStream in = Files.newInputStream(loose.toPath())) {
+                _out.write(WHOLE);
+                long length = 1 + in.transferTo(_out);
+                _slots.add(new Slot(id, typeCode(type), _offset,
+                        (int) length));
+                _offset += length;
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write pack: %s", excp.getMessage());
+            }
+        }
+
+        /** Add the object ID of type TYPE as a DELTA entry against
+         *  BASEID, stored in the same pack. */
+        void addDelta(String id, String type, String baseID, byte[] delta) {
+            ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            entry.write(DELTA);
+            entry.writeBytes(toBytes(baseID));
+            try (DeflaterOutputStream out = new DeflaterOutputStream(entry)) {
+                out.write(delta);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write pack: %s", excp.getMessage());
+            }
+            add(id, type, entry.toByteArray());
+        }
+
+        /** Add the object ID of type TYPE whose entry is ENTRY. */
+        void add(String id, String type, byte[] entry) {
+            try {
+                _slots.add(new Slot(id, typeCode(type), _offset,
+                        entry.length));
+                _out.write(entry);
+                _offset += entry.length;
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write pack: %s", excp.getMessage());
+            }
+        }
+
+        /** Finish the pack, write its index, and return the pack. Both
+         *  are published through the open Transaction, at its next sync,
+         *  so they are on disk before they are named, and the pack is
+         *  named before its index, so a pack is only loaded, and the
+         *  objects it replaces only deleted, once it is complete.
+         * @return the pack
+         * */
+        File finish() {
+            Collections.sort(_slots);
+            StringBuilder ids = new StringBuilder();
+            for (Slot slot : _slots) {
+                ids.append(slot._id);
+            }
+            String name = "pack-" + Utils.sha1(ids.toString());
+            File pack = new File(PACK_PATH + name + ".pack");
+            File index = new File(PACK_PATH + name + ".idx");
+            File tmpIndex = new File(PACK_PATH
+                    + _tmp.getName().replace(".pack", ".idx"));
+            try {
+                _out.close();
+                writeIndex(tmpIndex);
+            } catch (IOException excp) {
+                tmpIndex.delete();
+                throw Utils.error("Cannot write pack: %s", excp.getMessage());
+            }
+            Transaction.add(_tmp, pack);
+            Transaction.add(tmpIndex, index);
+            return pack;
+        }
+
+        /** Write the index of the sorted slots to INDEX. */
+        private void writeIndex(File index) throws IOException {
+            int idLength = _slots.isEmpty() ? Hashing.idLength()
+                    : _slots.get(0)._id.length() / 2;
+            if (IDX_HEADER + FANOUT * 4 + (long) _slots.size()
+                    * (idLength + 1 + 8 + 4) > Integer.MAX_VALUE) {
+                throw Utils.error("Too many objects for one pack");
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(index.toPath())))) {
+                out.writeInt(IDX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(idLength);
+                out.writeInt(_slots.size());
+                int[] fanout = new int[FANOUT];
+                for (Slot slot : _slots) {
+                    fanout[Integer.parseInt(slot._id.substring(0, 2), 16)]
+                            += 1;
+                }
+                int total = 0;
+                for (int i = 0; i < FANOUT; i += 1) {
+                    total += fanout[i];
+                    out.writeInt(total);
+                }
+                for (Slot slot : _slots) {
+                    out.write(toBytes(slot._id));
+                }
+                for (Slot slot : _slots) {
+                    out.writeByte(slot._type);
+                }
+                for (Slot slot : _slots) {
+                    out.writeLong(slot._offset);
+                }
+                for (Slot slot : _slots) {
+                    out.writeInt(slot._length);
+                }
+            }
+        }
+    }
+
+    /** An InputStream reading the remaining bytes of a ByteBuffer. */
+    private static class BufferInputStream extends InputStream {
+        /** The bytes left to read. */
+        private final ByteBuffer _buf;
+
+        /** A stream over the remaining bytes of BUF. */
+        BufferInputStream(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return _buf.hasRemaining() ? _buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!_buf.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, _buf.remaining());
+            _buf.get(b, off, len);
+            return len;
+        }
+    }
+}
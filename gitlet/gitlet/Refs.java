@@ -0,0 +1,146 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/** The branches of a repository and the one that is checked out. Each
+ *  branch is a small file `.gitlet/refs/heads/NAME` holding the ID of
+ *  its head commit, and `.gitlet/HEAD` holds the name of the current
+ *  branch, so that reading or moving one branch touches only its own
+ *  file. Files are replaced through Transaction, by renaming a synced
+ *  temporary file over them once the objects they may name are on
+ *  disk, so neither a reader nor a crash sees a partly written ref.
+ *  Until then the transaction holds the new contents, and reads here
+ *  see them.
+ *  Since a branch name becomes a file name, only names that stay a
+ *  single plain file inside the folder of branches are accepted.
+ *  @author Alex Liang
+ */
+class Refs {
+    /** CWD. */
+    private static final String CWD = System.getProperty("user.dir") + "/";
+
+    /** Path to the file naming the current branch. */
+    static final String HEAD_PATH = CWD + ".gitlet/HEAD";
+
+    /** Path to the folder holding one file per branch. */
+    static final String HEADS_PATH = CWD + ".gitlet/refs/heads/";
+
+    /** Return true iff the current directory holds a repository. */
+    static boolean initialized() {
+        return read(new File(HEAD_PATH)) != null;
+    }
+
+    /** Return the name of the current branch. */
+    static String currentBranch() {
+        String result = read(new File(HEAD_PATH));
+        if (result == null) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        return result;
+    }
+
+    /** Make BRANCH the current branch.
+     * @param branch
+     * */
+    static void setCurrentBranch(String branch) {
+        write(new File(HEAD_PATH), branch);
+    }
+
+    /** Return true iff BRANCH may name a branch: it is not empty, has
+     *  no '/', '\' or control characters, is not `.` or `..`, and does
+     *  not end in `.lock`, which names a ref being replaced.
+     * @param branch
+     * @return true or false
+     * */
+    static boolean isValidName(String branch) {
+        if (branch.isEmpty() || branch.equals(".") || branch.equals("..")
+            || branch.endsWith(".lock")) {
+            return false;
+        }
+        for (int i = 0; i < branch.length(); i += 1) {
+            char c = branch.charAt(i);
+            if (c == '/' || c == '\\' || Character.isISOControl(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Check that BRANCH may name a branch.
+     * @param branch
+     * */
+    static void checkName(String branch) {
+        if (!isValidName(branch)) {
+            throw Utils.error("Invalid branch name.");
+        }
+    }
+
+    /** Return true iff BRANCH exists.
+     * @param branch
+     * @return true or false
+     * */
+    static boolean exists(String branch) {
+        return get(branch) != null;
+    }
+
+    /** Return the ID of the head commit of BRANCH, or null if there is
+     *  no such branch.
+     * @param branch
+     * @return commit ID or null
+     * */
+    static String get(String branch) {
+        if (!isValidName(branch)) {
+            return null;
+        }
+        return read(new File(HEADS_PATH + branch));
+    }
+
+    /** Point BRANCH, creating it if needed, at the commit with ID.
+     * @param branch
+     * @param id
+     * */
+    static void set(String branch, String id) {
+        checkName(branch);
+        new File(HEADS_PATH).mkdirs();
+        write(new File(HEADS_PATH + branch), id);
+    }
+
+    /** Delete BRANCH.
+     * @param branch
+     * */
+    static void delete(String branch) {
+        checkName(branch);
+        Transaction.delete(new File(HEADS_PATH + branch));
+    }
+
+    /** Return the names of all branches, sorted. */
+    static List<String> branches() {
+        TreeSet<String> result = new TreeSet<String>(
+                Transaction.pendingIn(HEADS_PATH));
+        List<String> files = Utils.plainFilenamesIn(HEADS_PATH);
+        if (files != null) {
+            result.addAll(files);
+        }
+        result.removeIf(name -> !isValidName(name));
+        return new ArrayList<String>(result);
+    }
+
+    /** Return the line held by FILE, or null if it does not exist. */
+    private static String read(File file) {
+        byte[] contents = Transaction.contents(file);
+        if (contents == null) {
+            return null;
+        }
+        return new String(contents, StandardCharsets.UTF_8).trim();
+    }
+
+    /** Replace the contents of FILE with the line VALUE. */
+    private static void write(File file, String value) {
+        Transaction.replace(file,
+                (value + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
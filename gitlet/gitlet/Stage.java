@@ -2,25 +2,31 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /** The Stage class that keeps track of all the files
- * staged for addition or removal.
+ * staged for addition or removal. A staged file is already written to
+ * the object store, so the stage itself holds only the ID of each file
+ * and stays small however large the staged files are.
  *  @author Alex Liang
  */
 public class Stage implements Serializable {
     /** All staged files for addition. stageArea<Filename, FileID>. */
-    private HashMap<String, Blob> _stageAdd;
+    private HashMap<String, String> _stageAdd;
 
     /** All staged files for removal. stageArea<Filename, FileID>. */
-    private HashMap<String, Blob> _stageRemoval;
+    private HashMap<String, String> _stageRemoval;
 
     /** Construct a new stage area. There should be only one
      * stage object stored in the `stage` folder.
      * */
     public Stage() {
-        _stageAdd = new HashMap<String, Blob>();
-        _stageRemoval = new HashMap<String, Blob>();
+        _stageAdd = new HashMap<String, String>();
+        _stageRemoval = new HashMap<String, String>();
     }
 
     /** Add a new file to the stage area if it was not added
@@ -30,37 +36,77 @@ public class Stage implements Serializable {
      * version in the current commit, do not stage it to be added,
      * and remove it from the staging area if it is already there
      * (as can happen when a file is changed, added, and then changed back).
+     * A file whose stat in CACHE shows it unchanged is not read again.
      * @param filename
      * @param head
+     * @param cache
      */
-    public void add(String filename, Commit head) {
+    public void add(String filename, Commit head, StatCache cache) {
         File file = new File(filename);
 
         if (!file.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+            throw Utils.error("File does not exist.");
         }
 
-        Blob newBlob = new Blob(filename);
-        HashMap<String, String> existBlobs = head.getBlobs();
-        if (!existBlobs.containsKey(filename)) {
-            _stageAdd.put(filename, newBlob);
-        } else {
-            if (newBlob.getID().equals(existBlobs.get(filename))) {
-                _stageAdd.remove(filename);
+        String id = cache.lookup(filename);
+        if (id == null || !ObjectStore.contains(id)) {
+            id = ObjectStore.writeFile(ObjectStore.BLOB, file);
+            cache.record(filename, id);
+        }
+        stage(filename, id, head);
+    }
+
+    /** Add each of the existing files FILENAMES as add() would, except
+     *  that a file staged for removal is only unstaged. The files whose
+     *  stat in CACHE does not show them unchanged are hashed and stored
+     *  in parallel on the common fork-join pool.
+     * @param filenames
+     * @param head
+     * @param cache
+     */
+    public void addAll(List<String> filenames, Commit head,
+                       StatCache cache) {
+        HashMap<String, String> ids = new HashMap<String, String>();
+        ArrayList<String> unknown = new ArrayList<String>();
+        for (String filename : filenames) {
+            if (_stageRemoval.remove(filename) != null) {
+                continue;
+            }
+            String id = cache.lookup(filename);
+            if (id == null || !ObjectStore.contains(id)) {
+                unknown.add(filename);
             } else {
-                _stageAdd.put(filename, newBlob);
+                ids.put(filename, id);
             }
         }
+        List<String> stored = unknown.parallelStream()
+            .map(f -> ObjectStore.writeFile(ObjectStore.BLOB, new File(f)))
+            .collect(Collectors.toList());
+        for (int i = 0; i < unknown.size(); i += 1) {
+            cache.record(unknown.get(i), stored.get(i));
+            ids.put(unknown.get(i), stored.get(i));
+        }
+        for (Map.Entry<String, String> set : ids.entrySet()) {
+            stage(set.getKey(), set.getValue(), head);
+        }
     }
 
-    public void stageRemove(String filename) {
-        Blob blob = new Blob(filename);
-        _stageRemoval.put(filename, blob);
+    /** Stage FILENAME, whose contents are the blob ID, for addition,
+     *  unless HEAD already has that version. */
+    private void stage(String filename, String id, Commit head) {
+        if (id.equals(head.getBlobs().get(filename))) {
+            _stageAdd.remove(filename);
+        } else {
+            _stageAdd.put(filename, id);
+        }
     }
 
-    public void stageRemove(Blob b) {
-        _stageRemoval.put(b.getFilename(), b);
+    /** Stage FILENAME, tracked as the blob ID, for removal.
+     * @param filename
+     * @param id
+     * */
+    public void stageRemove(String filename, String id) {
+        _stageRemoval.put(filename, id);
     }
 
     public void unstage(String filename) {
@@ -71,7 +117,12 @@ public class Stage implements Serializable {
         _stageRemoval.remove(filename);
     }
 
-    public Blob getBlob(String filename) {
+    /** Return the blob ID staged for FILENAME, or null if it is not
+     *  staged.
+     * @param filename
+     * @return blob ID or null
+     * */
+    public String getID(String filename) {
         if (_stageAdd.containsKey(filename)) {
             return _stageAdd.get(filename);
         } else if (_stageRemoval.containsKey(filename)) {
@@ -81,11 +132,11 @@ public class Stage implements Serializable {
         return null;
     }
 
-    public HashMap<String, Blob> getStageAdd() {
+    public HashMap<String, String> getStageAdd() {
         return _stageAdd;
     }
 
-    public HashMap<String, Blob> getStageRemoval() {
+    public HashMap<String, String> getStageRemoval() {
         return _stageRemoval;
     }
 
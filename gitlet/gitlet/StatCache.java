@@ -0,0 +1,232 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** A persistent cache of the stat information of working files, kept in
+ *  `.gitlet/index`. For each path it remembers the size, modification
+ *  time and inode the file had when it was last hashed or checked out,
+ *  together with its blob ID, so that an unchanged file is recognized
+ *  from a stat alone. An entry whose modification time is not older
+ *  than the index file itself is "racy": the file may have changed
+ *  again within the same clock tick, so it is hashed anyway. Both times
+ *  come from the file system, so they share its clock and resolution.
+ *  The index is written to a temporary file and renamed into place; it
+ *  is only a cache, so one damaged by a crash is dropped on load.
+ *  @author Alex Liang
+ */
+class StatCache {
+    /** CWD. */
+    private static final String CWD = System.getProperty("user.dir") + "/";
+
+    /** Path to the index file. */
+    private static final String INDEX_PATH = CWD + ".gitlet/index";
+
+    /** Magic number opening the index file ("GIDX"). */
+    private static final int MAGIC = 0x47494458;
+
+    /** The stat information and blob ID of one path. */
+    private static class Entry {
+        /** File size. */
+        private final long _size;
+        /** Modification time in nanoseconds. */
+        private final long _mtime;
+        /** Inode number, or 0 where the file system has none. */
+        private final long _inode;
+        /** Blob ID of the contents. */
+        private final String _id;
+
+        /** An entry for a file of SIZE bytes, modified at MTIME, with
+         *  inode INODE and blob ID ID. */
+        Entry(long size, long mtime, long inode, String id) {
+            _size = size;
+            _mtime = mtime;
+            _inode = inode;
+            _id = id;
+        }
+
+        /** Return true iff STAT describes the same file as this entry. */
+        boolean matches(Entry stat) {
+            return _size == stat._size && _mtime == stat._mtime
+                && _inode == stat._inode;
+        }
+    }
+
+    /** Entries by path. */
+    private final HashMap<String, Entry> _entries =
+        new HashMap<String, Entry>();
+
+    /** Modification time in nanoseconds of the index file when it was
+     *  last loaded or saved. */
+    private long _savedAt;
+
+    /** True iff _entries differs from the index file. */
+    private boolean _dirty;
+
+    /** Load the stat cache of the current repository. An absent or
+     *  unreadable index yields an empty cache. */
+    static StatCache load() {
+        StatCache result = new StatCache();
+        File file = new File(INDEX_PATH);
+        if (!file.isFile()) {
+            return result;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        file.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                return result;
+            }
+            result._savedAt = modified(file);
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 1) {
+                String path = in.readUTF();
+                result._entries.put(path, new Entry(in.readLong(),
+                        in.readLong(), in.readLong(), in.readUTF()));
+            }
+        } catch (IOException excp) {
+            result._entries.clear();
+        }
+        return result;
+    }
+
+    /** Write the cache back to the index file if it changed. */
+    void save() {
+        if (!_dirty) {
+            return;
+        }
+        File file = new File(INDEX_PATH);
+        File tmp = new File(INDEX_PATH + ".lock");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry._size);
+                out.writeLong(entry._mtime);
+                out.writeLong(entry._inode);
+                out.writeUTF(entry._id);
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw Utils.error("Cannot write index: %s", excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            _savedAt = modified(file);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write index: %s", excp.getMessage());
+        }
+        _dirty = false;
+    }
+
+    /** Return the modification time of FILE in nanoseconds. */
+    private static long modified(File file) throws IOException {
+        return Files.getLastModifiedTime(file.toPath())
+            .to(TimeUnit.NANOSECONDS);
+    }
+
+    /** Return the blob ID of the working file FILENAME if its stat shows
+     *  it unchanged since it was recorded, and null otherwise.
+     * @param filename
+     * @return blob ID or null
+     * */
+    String lookup(String filename) {
+        Entry entry = _entries.get(filename);
+        if (entry == null || entry._mtime >= _savedAt) {
+            return null;
+        }
+        Entry stat = stat(filename);
+        return stat != null && entry.matches(stat) ? entry._id : null;
+    }
+
+    /** Return the blob ID of the contents of the working file FILENAME,
+     *  hashing it only if its stat changed, or null if it does not
+     *  exist.
+     * @param filename
+     * @return blob ID or null
+     * */
+    String idOf(String filename) {
+        String id = lookup(filename);
+        if (id == null && new File(filename).isFile()) {
+            id = ObjectStore.hashFile(ObjectStore.BLOB, new File(filename));
+            record(filename, id);
+        }
+        return id;
+    }
+
+    /** Remember that the working file FILENAME, as it is now, holds the
+     *  blob ID.
+     * @param filename
+     * @param id
+     * */
+    void record(String filename, String id) {
+        Entry stat = stat(filename);
+        if (stat == null) {
+            forget(filename);
+        } else {
+            _entries.put(filename, new Entry(stat._size, stat._mtime,
+                    stat._inode, id));
+            _dirty = true;
+        }
+    }
+
+    /** Drop whatever is known about FILENAME.
+     * @param filename
+     * */
+    void forget(String filename) {
+        if (_entries.remove(filename) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Return the current stat information of FILENAME, with no ID, or
+     *  null if it is not a file. */
+    private static Entry stat(String filename) {
+        Path path = new File(filename).toPath();
+        try {
+            long inode = 0;
+            FileTime mtime;
+            long size;
+            try {
+                Map<String, Object> attrs = Files.readAttributes(path,
+                        "unix:size,lastModifiedTime,ino");
+                size = (Long) attrs.get("size");
+                mtime = (FileTime) attrs.get("lastModifiedTime");
+                inode = (Long) attrs.get("ino");
+            } catch (UnsupportedOperationException excp) {
+                BasicFileAttributes attrs =
+                    Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    return null;
+                }
+                size = attrs.size();
+                mtime = attrs.lastModifiedTime();
+            }
+            return new Entry(size, mtime.to(TimeUnit.NANOSECONDS), inode,
+                    null);
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot stat %s: %s", filename,
+                    excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** The writes of one command, made durable together. New objects are
+ *  written to temporary files and only named when the transaction is
+ *  synced: when a commit is stored, at a batch checkpoint, or when the
+ *  command ends. The pending objects are then gathered into one pack
+ *  (see ObjectStore.packPending), so that however many a command writes
+ *  they cost the sync of one pack and its index. New contents of refs
+ *  and the staging area are queued in memory, and at a sync written to
+ *  lock files, which are synced in one parallel round with the new
+ *  files and with the files appended to in place, such as the commit
+ *  log and indexes. The new files are then named and their folders
+ *  synced, and only then are the lock files renamed over the refs and
+ *  staging area and their folders synced, so after a crash these name
+ *  either the old state or a new one whose objects and index entries
+ *  are all on disk. Storing a commit syncs its objects before the
+ *  indexes name it (see Gitlet.storeCommit), so a commit costs two
+ *  such rounds and other commands one. Outside a transaction each
+ *  write is published as soon as it is made.
+ *  @author Alex Liang
+ */
+class Transaction {
+    /** Temporary files written in the open transaction, by the path
+     *  they are published under. */
+    private static final Map<String, File> PENDING =
+        new LinkedHashMap<String, File>();
+
+    /** Files appended to or updated in place in the open transaction,
+     *  to be synced with the pending files. */
+    private static final LinkedHashSet<File> WRITTEN =
+        new LinkedHashSet<File>();
+
+    /** New contents of files replaced in the open transaction, by
+     *  path. */
+    private static final Map<String, byte[]> REPLACED =
+        new LinkedHashMap<String, byte[]>();
+
+    /** Files to delete once the pending files are published, as the
+     *  packs folded into a new one. */
+    private static final ArrayList<File> OBSOLETE = new ArrayList<File>();
+
+    /** Number of files and folders synced so far. */
+    private static final AtomicInteger SYNCS = new AtomicInteger();
+
+    /** A point in the open transaction to which it can be rolled back,
+     *  as when one command of a batch fails. */
+    static final class Mark {
+        /** Paths of the files pending publication at the mark. */
+        private final HashSet<String> _pending;
+
+        /** Replacements queued at the mark. */
+        private final LinkedHashMap<String, byte[]> _replaced;
+
+        /** A mark of the current writes. */
+        private Mark() {
+            _pending = new HashSet<String>(PENDING.keySet());
+            _replaced = new LinkedHashMap<String, byte[]>(REPLACED);
+        }
+    }
+
+    /** True iff a transaction is open. */
+    private static boolean _open;
+
+    /** Open a transaction, so that new files are published together. */
+    static synchronized void begin() {
+        _open = true;
+    }
+
+    /** Publish TMP, a complete new file, as TARGET, replacing any file
+     *  already there. In a transaction this happens at the next sync.
+     * @param tmp
+     * @param target
+     * */
+    static synchronized void add(File tmp, File target) {
+        if (!_open) {
+            publish(tmp, target);
+            return;
+        }
+        File old = PENDING.put(target.getPath(), tmp);
+        if (old != null && !old.equals(tmp)) {
+            old.delete();
+        }
+    }
+
+    /** Publish TMP, a complete new file, as TARGET right away, even in
+     *  a transaction, once TMP is on disk.
+     * @param tmp
+     * @param target
+     * */
+    static void publish(File tmp, File target) {
+        force(tmp);
+        move(tmp, target);
+        syncDirectory(target.getAbsoluteFile().getParentFile());
+    }
+
+    /** Record that FILE was appended to or updated in place, so that it
+     *  is synced before the next ref is published. Outside a
+     *  transaction it is synced right away.
+     * @param file
+     * */
+    static synchronized void written(File file) {
+        if (!_open) {
+            force(file);
+        } else {
+            WRITTEN.add(file);
+        }
+    }
+
+    /** Cut FILE, whose records of RECORDSIZE bytes each start at
+     *  offset START, after its last whole record, dropping the part of
+     *  a record left by an append cut short by a crash. Later appends
+     *  then start on a record boundary.
+     * @param file
+     * @param start
+     * @param recordSize
+     * */
+    static void trimTail(File file, long start, int recordSize) {
+        long extra = (file.length() - start) % recordSize;
+        if (extra <= 0) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(file.length() - extra);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot repair %s: %s", file.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** Return the temporary file that will be published under PATH, or
+     *  null if there is none.
+     * @param path
+     * @return a pending file or null
+     * */
+    static synchronized File pending(String path) {
+        return PENDING.get(path);
+    }
+
+    /** Return the names of the files pending publication in the folder
+     *  DIR, which ends in a separator, whether new or replaced.
+     * @param dir
+     * @return file names
+     * */
+    static synchronized List<String> pendingIn(String dir) {
+        ArrayList<String> result = new ArrayList<String>();
+        ArrayList<String> paths = new ArrayList<String>(PENDING.keySet());
+        paths.addAll(REPLACED.keySet());
+        for (String path : paths) {
+            if (path.startsWith(dir)
+                && path.indexOf('/', dir.length()) < 0) {
+                result.add(path.substring(dir.length()));
+            }
+        }
+        return result;
+    }
+
+    /** Drop the file pending publication under PATH, deleting it, as
+     *  when its contents have been copied elsewhere.
+     * @param path
+     * */
+    static synchronized void drop(String path) {
+        File tmp = PENDING.remove(path);
+        if (tmp != null) {
+            tmp.delete();
+        }
+    }
+
+    /** Delete FILE once the files now pending are published, or right
+     *  away outside a transaction.
+     * @param file
+     * */
+    static synchronized void deleteAfter(File file) {
+        if (!_open) {
+            file.delete();
+        } else {
+            OBSOLETE.add(file);
+        }
+    }
+
+    /** Return the contents FILE has, or will have once the open
+     *  transaction replaces it, or null if it does not exist.
+     * @param file
+     * @return file contents or null
+     * */
+    static synchronized byte[] contents(File file) {
+        byte[] result = REPLACED.get(file.getPath());
+        if (result == null && file.isFile()) {
+            result = Utils.readContents(file);
+        }
+        return result;
+    }
+
+    /** Delete FILE, along with any contents the open transaction was to
+     *  give it.
+     * @param file
+     * */
+    static synchronized void delete(File file) {
+        REPLACED.remove(file.getPath());
+        file.delete();
+    }
+
+    /** Return the number of files and folders synced so far, to
+     *  measure what commands cost. */
+    static int syncs() {
+        return SYNCS.get();
+    }
+
+    /** Make every pending file durable and publish it. The pending
+     *  objects are first gathered into one pack, and the queued
+     *  replacements written to lock files. Those files and the files
+     *  written in place are synced in parallel; then the new files are
+     *  renamed and their folders synced, and last the lock files are
+     *  renamed and their folders synced. */
+    static synchronized void sync() {
+        ObjectStore.packPending();
+        if (PENDING.isEmpty() && WRITTEN.isEmpty() && REPLACED.isEmpty()) {
+            return;
+        }
+        LinkedHashMap<String, File> locks = new LinkedHashMap<String, File>();
+        for (Map.Entry<String, byte[]> e : REPLACED.entrySet()) {
+            File lock = new File(e.getKey() + ".lock");
+            write(lock, e.getValue());
+            locks.put(e.getKey(), lock);
+        }
+        REPLACED.clear();
+        ArrayList<File> files = new ArrayList<File>(PENDING.values());
+        files.addAll(locks.values());
+        for (File file : WRITTEN) {
+            if (file.isFile()) {
+                files.add(file);
+            }
+        }
+        WRITTEN.clear();
+        files.parallelStream().forEach(Transaction::force);
+        moveAll(PENDING);
+        PENDING.clear();
+        moveAll(locks);
+        for (File file : OBSOLETE) {
+            file.delete();
+        }
+        OBSOLETE.clear();
+    }
+
+    /** Rename each file in FILES to the path it is mapped from, then
+     *  sync each folder they went into once, in parallel. */
+    private static void moveAll(Map<String, File> files) {
+        LinkedHashSet<File> dirs = new LinkedHashSet<File>();
+        for (Map.Entry<String, File> e : files.entrySet()) {
+            File target = new File(e.getKey());
+            move(e.getValue(), target);
+            dirs.add(target.getAbsoluteFile().getParentFile());
+        }
+        dirs.parallelStream().forEach(Transaction::syncDirectory);
+    }
+
+    /** Replace the contents of FILE with CONTENTS atomically and
+     *  durably, once every pending file, which FILE may refer to, is
+     *  published. In a transaction this happens at the next sync, and
+     *  until then contents() returns CONTENTS.
+     * @param file
+     * @param contents
+     * */
+    static synchronized void replace(File file, byte[] contents) {
+        REPLACED.put(file.getPath(), contents);
+        if (!_open) {
+            sync();
+        }
+    }
+
+    /** Return a mark of the writes made so far in the open transaction.
+     * @return a Mark
+     * */
+    static synchronized Mark mark() {
+        return new Mark();
+    }
+
+    /** Drop the writes made in the open transaction since MARK: the
+     *  files pending since are deleted, and the replacements queued
+     *  since are forgotten. Files published by a sync since MARK stay
+     *  published, and appends in place are kept.
+     * @param mark
+     * */
+    static synchronized void rollback(Mark mark) {
+        Iterator<Map.Entry<String, File>> pending =
+            PENDING.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map.Entry<String, File> e = pending.next();
+            if (!mark._pending.contains(e.getKey())) {
+                e.getValue().delete();
+                pending.remove();
+            }
+        }
+        REPLACED.clear();
+        REPLACED.putAll(mark._replaced);
+    }
+
+    /** Publish every pending file and close the transaction. */
+    static synchronized void commit() {
+        sync();
+        _open = false;
+    }
+
+    /** Drop every pending file and close the transaction, as when its
+     *  command failed. */
+    static synchronized void abort() {
+        for (File tmp : PENDING.values()) {
+            tmp.delete();
+        }
+        PENDING.clear();
+        WRITTEN.clear();
+        REPLACED.clear();
+        OBSOLETE.clear();
+        _open = false;
+    }
+
+    /** Write CONTENTS to FILE, replacing what it held, without syncing
+     *  it. */
+    private static void write(File file, byte[] contents) {
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(contents);
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+        } catch (IOException excp) {
+            file.delete();
+            throw Utils.error("Cannot write %s: %s", file.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** Write the contents of FILE through to the disk. */
+    private static void force(File file) {
+        SYNCS.incrementAndGet();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot sync %s: %s", file.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** Rename TMP to TARGET, replacing any file already there. */
+    private static void move(File tmp, File target) {
+        try {
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot update %s: %s", target.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** Write the entries of the folder DIR through to the disk, where
+     *  the system allows a folder to be synced. */
+    private static void syncDirectory(File dir) {
+        SYNCS.incrementAndGet();
+        try (FileChannel channel = FileChannel.open(dir.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+}
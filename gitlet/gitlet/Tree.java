@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Tree objects, which record the files of a commit one directory at a
+ *  time. A tree lists the entries of one directory in name order, each
+ *  a file with the ID of its blob or a subdirectory with the ID of its
+ *  own tree. Trees are stored by the hash of their contents, so a
+ *  directory that did not change between two commits is one shared
+ *  object, and two trees with the same ID hold the same files.
+ *  Each entry is stored as its kind byte, its raw ID and its name.
+ *  @author Alex Liang
+ */
+class Tree {
+    /** Kind byte of an entry naming a file. */
+    private static final byte FILE = 0;
+
+    /** Kind byte of an entry naming a subdirectory. */
+    private static final byte DIR = 1;
+
+    /** Store the trees of the files BLOBS, which maps each path, with
+     *  directories separated by '/', to the ID of its blob. Trees that
+     *  are already stored are not written again. A path cannot name
+     *  both a file and a directory holding other files, so BLOBS may
+     *  not have both `a` and `a/b`.
+     * @param blobs
+     * @return the ID of the root tree
+     * */
+    static String write(Map<String, String> blobs) {
+        TreeMap<String, String> files = new TreeMap<String, String>(blobs);
+        for (String path : files.keySet()) {
+            String under = files.ceilingKey(path + "/");
+            if (under != null && under.startsWith(path + "/")) {
+                throw Utils.error("Cannot track both %s and %s; "
+                        + "remove one of them.", path, under);
+            }
+        }
+        return writeDir(files);
+    }
+
+    /** Return the files under the tree ID, mapping each path to the ID
+     *  of its blob.
+     * @param id
+     * @return paths and blob IDs
+     * */
+    static HashMap<String, String> files(String id) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        collect(id, "", result);
+        return result;
+    }
+
+    /** Return the paths whose blob differs between the trees ONE and
+     *  TWO, each mapped to its blob ID under TWO, or to null if TWO
+     *  lacks it. Subtrees with the same ID in both are skipped without
+     *  being read.
+     * @param one
+     * @param two
+     * @return changed paths
+     * */
+    static HashMap<String, String> diff(String one, String two) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        diff(one, two, "", result);
+        return result;
+    }
+
+    /** Return the paths, in name order, of the files under the tree ID
+     *  whose blobs are in BLOBS. The answer for each subtree is kept in
+     *  SEEN, by tree ID, so a subtree shared by many commits is read
+     *  only once.
+     * @param id
+     * @param blobs
+     * @param seen
+     * @return matching paths
+     * */
+    static List<String> filesWith(String id, Set<String> blobs,
+                                  Map<String, List<String>> seen) {
+        List<String> result = seen.get(id);
+        if (result != null) {
+            return result;
+        }
+        result = new ArrayList<String>();
+        for (Map.Entry<String, Entry> entry : read(id).entrySet()) {
+            String name = entry.getKey();
+            Entry value = entry.getValue();
+            if (value._kind == DIR) {
+                for (String path : filesWith(value._id, blobs, seen)) {
+                    result.add(name + "/" + path);
+                }
+            } else if (blobs.contains(value._id)) {
+                result.add(name);
+            }
+        }
+        seen.put(id, result);
+        return result;
+    }
+
+    /** Store the tree of the files FILES, paths relative to its
+     *  directory, and return its ID. */
+    private static String writeDir(TreeMap<String, String> files) {
+        TreeMap<String, Entry> entries = new TreeMap<String, Entry>();
+        TreeMap<String, TreeMap<String, String>> dirs =
+            new TreeMap<String, TreeMap<String, String>>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            String path = file.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                entries.put(path, new Entry(FILE, file.getValue()));
+            } else {
+                dirs.computeIfAbsent(path.substring(0, slash),
+                    k -> new TreeMap<String, String>())
+                    .put(path.substring(slash + 1), file.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> dir
+                 : dirs.entrySet()) {
+            entries.put(dir.getKey(), new Entry(DIR, writeDir(dir.getValue())));
+        }
+        byte[] content = encode(entries);
+        return ObjectStore.write(ObjectStore.TREE, content);
+    }
+
+    /** Add the files under the tree ID to RESULT, prefixing their paths
+     *  with PREFIX. */
+    private static void collect(String id, String prefix,
+                                Map<String, String> result) {
+        for (Map.Entry<String, Entry> entry : read(id).entrySet()) {
+            String path = prefix + entry.getKey();
+            if (entry.getValue()._kind == DIR) {
+                collect(entry.getValue()._id, path + "/", result);
+            } else {
+                result.put(path, entry.getValue()._id);
+            }
+        }
+    }
+
+    /** Add the differences between the trees ONE and TWO, either of
+     *  which may be null for a missing directory, to RESULT as diff()
+     *  does, prefixing their paths with PREFIX. */
+    private static void diff(String one, String two, String prefix,
+                             Map<String, String> result) {
+        if (one != null && one.equals(two)) {
+            return;
+        }
+        TreeMap<String, Entry> first =
+            one == null ? new TreeMap<String, Entry>() : read(one);
+        TreeMap<String, Entry> second =
+            two == null ? new TreeMap<String, Entry>() : read(two);
+        for (Map.Entry<String, Entry> entry : first.entrySet()) {
+            Entry other = second.get(entry.getKey());
+            diffEntry(entry.getValue(), other, prefix + entry.getKey(),
+                    result);
+        }
+        for (Map.Entry<String, Entry> entry : second.entrySet()) {
+            if (!first.containsKey(entry.getKey())) {
+                diffEntry(null, entry.getValue(), prefix + entry.getKey(),
+                        result);
+            }
+        }
+    }
+
+    /** Add the differences between the entries ONE and TWO, either of
+     *  which may be null, found at PATH to RESULT. */
+    private static void diffEntry(Entry one, Entry two, String path,
+                                  Map<String, String> result) {
+        String oneDir = one != null && one._kind == DIR ? one._id : null;
+        String twoDir = two != null && two._kind == DIR ? two._id : null;
+        String oneFile = one != null && one._kind == FILE ? one._id : null;
+        String twoFile = two != null && two._kind == FILE ? two._id : null;
+        if (oneDir != null || twoDir != null) {
+            diff(oneDir, twoDir, path + "/", result);
+        }
+        if (oneFile != null && !oneFile.equals(twoFile)
+                || oneFile == null && twoFile != null) {
+            result.put(path, twoFile);
+        }
+    }
+
+    /** Return the encoding of ENTRIES. */
+    private static byte[] encode(TreeMap<String, Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeByte(entry.getValue()._kind);
+                out.write(PackFile.toBytes(entry.getValue()._id));
+                out.writeUTF(entry.getKey());
+            }
+        } catch (IOException excp) {
+            throw new Error("unexpected exception", excp);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the entries of the stored tree ID, by name. */
+    private static TreeMap<String, Entry> read(String id) {
+        byte[] content = ObjectStore.read(id, ObjectStore.TREE);
+        TreeMap<String, Entry> result = new TreeMap<String, Entry>();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(content))) {
+            byte[] raw = new byte[Hashing.idLength()];
+            while (in.available() > 0) {
+                byte kind = in.readByte();
+                in.readFully(raw);
+                result.put(in.readUTF(), new Entry(kind, Utils.toHex(raw)));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Tree %s is corrupt", id);
+        }
+        return result;
+    }
+
+    /** An entry of a tree. */
+    private static class Entry {
+        /** FILE or DIR. */
+        private final byte _kind;
+
+        /** ID of the blob or tree. */
+        private final String _id;
+
+        /** An entry of KIND naming the object ID. */
+        Entry(byte kind, String id) {
+            _kind = kind;
+            _id = id;
+        }
+    }
+}
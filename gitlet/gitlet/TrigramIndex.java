@@ -0,0 +1,359 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/** An index from each three-byte sequence to the blobs that contain it,
+ *  used to find blobs containing a string without reading them all.
+ *  The indexed blobs are numbered in the order the object store logged
+ *  them (see ObjectStore.blobsSince), and their raw IDs are kept in that
+ *  order in `.gitlet/trigram-blobs`, which is thus a prefix of the log.
+ *  The index itself, in `.gitlet/trigram-index`, is a set of longs
+ *  holding a trigram in the high 32 bits and a blob number in the low
+ *  32 bits, stored as a sorted run, searched in place, followed by an
+ *  unsorted tail that is merged into the run once it grows too long.
+ *  Blobs logged since are added by update(), so the index grows with
+ *  the repository rather than being rebuilt, and keeping it current
+ *  reads only the new blobs.
+ *  @author Alex Liang
+ */
+class TrigramIndex {
+    /** CWD. */
+    private static final String CWD = System.getProperty("user.dir") + "/";
+
+    /** Path to the table of indexed blobs. */
+    private static final String BLOBS_PATH = CWD + ".gitlet/trigram-blobs";
+
+    /** Path to the index file. */
+    private static final String INDEX_PATH = CWD + ".gitlet/trigram-index";
+
+    /** Magic number opening the index file ("GTR2"). */
+    private static final int MAGIC = 0x47545232;
+
+    /** Length in bytes of the header of the index file. */
+    private static final int HEADER_SIZE = 8;
+
+    /** Size of the buffer used to read blobs. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Fewest entries in the tail that cause a rewrite. The tail may
+     *  also grow to an eighth of the run. */
+    private static final int MIN_TAIL = 1 << 16;
+
+    /** IDs of the indexed blobs, by number. */
+    private final ArrayList<String> _blobs = new ArrayList<String>();
+
+    /** Numbers of the indexed blobs, by ID. */
+    private final HashMap<String, Integer> _numbers =
+        new HashMap<String, Integer>();
+
+    /** The sorted run of entries. */
+    private LongBuffer _sorted = LongBuffer.allocate(0);
+
+    /** The entries of the tail, in the order added. */
+    private long[] _tail = new long[0];
+
+    /** Number of entries in the tail. */
+    private int _tailSize;
+
+    /** An empty index. */
+    private TrigramIndex() {
+    }
+
+    /** Load the trigram index of the current repository, which is
+     *  empty if it has none yet.
+     * @return the index
+     * */
+    static TrigramIndex load() {
+        TrigramIndex result = new TrigramIndex();
+        File index = new File(INDEX_PATH);
+        if (!index.isFile()) {
+            new File(BLOBS_PATH).delete();
+            return result;
+        }
+        Transaction.trimTail(index, HEADER_SIZE, Long.BYTES);
+        File blobs = new File(BLOBS_PATH);
+        Transaction.trimTail(blobs, 0, Hashing.idLength());
+        try (FileChannel channel = FileChannel.open(index.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            if (buf.getInt() != MAGIC) {
+                throw Utils.error("Corrupt trigram index");
+            }
+            int sorted = buf.getInt();
+            result._sorted = buf.slice(HEADER_SIZE, sorted * 8)
+                .asLongBuffer();
+            buf.position(HEADER_SIZE + sorted * 8);
+            result._tail = new long[buf.remaining() / 8];
+            buf.asLongBuffer().get(result._tail);
+            result._tailSize = result._tail.length;
+
+            byte[] ids = blobs.isFile()
+                ? Files.readAllBytes(blobs.toPath()) : new byte[0];
+            int idLength = Hashing.idLength();
+            for (int i = 0; i + idLength <= ids.length; i += idLength) {
+                result.number(Utils.toHex(
+                        Arrays.copyOfRange(ids, i, i + idLength)));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read trigram index: %s",
+                    excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Index the blobs logged since the last update, streaming them in
+     *  parallel so that a blob of any size can be indexed. A blob logged
+     *  again, or whose write was dropped, is numbered without entries.
+     *  The entries are written before the blob table, so a crash in
+     *  between leaves only entries for numbers that later blobs will
+     *  reuse, which at worst adds candidates. */
+    void update() {
+        List<String> logged = ObjectStore.blobsSince(_blobs.size());
+        if (logged.isEmpty()) {
+            return;
+        }
+        HashSet<String> missing = new HashSet<String>();
+        for (String id : logged) {
+            if (!_numbers.containsKey(id) && ObjectStore.contains(id)) {
+                missing.add(id);
+            }
+        }
+        Map<String, int[]> trigrams = missing.parallelStream()
+            .collect(Collectors.toMap(id -> id, id -> trigrams(id)));
+        int first = _tailSize;
+        for (String id : logged) {
+            long number = number(id);
+            for (int trigram : trigrams.getOrDefault(id, new int[0])) {
+                append(((long) trigram << 32) | number);
+            }
+            trigrams.remove(id);
+        }
+        if (!new File(INDEX_PATH).isFile()
+                || _tailSize > Math.max(MIN_TAIL, _sorted.limit() / 8)) {
+            rewrite();
+        } else {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                        new FileOutputStream(INDEX_PATH, true)))) {
+                for (int i = first; i < _tailSize; i += 1) {
+                    out.writeLong(_tail[i]);
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write trigram index: %s",
+                        excp.getMessage());
+            }
+            Transaction.written(new File(INDEX_PATH));
+        }
+        try (FileOutputStream out = new FileOutputStream(BLOBS_PATH, true)) {
+            for (String id : logged) {
+                out.write(PackFile.toBytes(id));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write trigram index: %s",
+                    excp.getMessage());
+        }
+        Transaction.written(new File(BLOBS_PATH));
+    }
+
+    /** Return the IDs of the indexed blobs that may contain NEEDLE: all
+     *  of them if it is shorter than three bytes, and otherwise those
+     *  that contain each of its trigrams.
+     * @param needle
+     * @return blob IDs
+     * */
+    List<String> candidates(byte[] needle) {
+        int[] result = null;
+        for (int trigram : trigrams(needle)) {
+            int[] blobs = lookup(trigram);
+            result = result == null ? blobs : intersect(result, blobs);
+        }
+        if (result == null) {
+            return new ArrayList<String>(_blobs);
+        }
+        ArrayList<String> ids = new ArrayList<String>();
+        for (int number : result) {
+            if (number < _blobs.size()) {
+                ids.add(_blobs.get(number));
+            }
+        }
+        return ids;
+    }
+
+    /** Return the sorted numbers of the blobs containing TRIGRAM. */
+    private int[] lookup(int trigram) {
+        long low = (long) trigram << 32, high = (long) (trigram + 1) << 32;
+        int lo = 0, hi = _sorted.limit();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_sorted.get(mid) < low) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int[] result = new int[16];
+        int count = 0;
+        for (int pos = lo; pos < _sorted.limit() && _sorted.get(pos) < high;
+             pos += 1) {
+            if (count == result.length) {
+                result = Arrays.copyOf(result, 2 * count);
+            }
+            result[count] = (int) _sorted.get(pos);
+            count += 1;
+        }
+        for (int i = 0; i < _tailSize; i += 1) {
+            if (_tail[i] >= low && _tail[i] < high) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, 2 * count);
+                }
+                result[count] = (int) _tail[i];
+                count += 1;
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Return the numbers in both of the sorted arrays A and B. */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[count] = a[i];
+                count += 1;
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Return the distinct trigrams of CONTENT, in increasing order.
+     * @param content
+     * @return trigrams as 24-bit ints
+     * */
+    static int[] trigrams(byte[] content) {
+        if (content.length < 3) {
+            return new int[0];
+        }
+        int[] all = new int[content.length - 2];
+        for (int i = 0; i < all.length; i += 1) {
+            all[i] = (content[i] & 0xff) << 16
+                | (content[i + 1] & 0xff) << 8 | (content[i + 2] & 0xff);
+        }
+        Arrays.sort(all);
+        int count = 0;
+        for (int i = 0; i < all.length; i += 1) {
+            if (i == 0 || all[i] != all[i - 1]) {
+                all[count] = all[i];
+                count += 1;
+            }
+        }
+        return Arrays.copyOf(all, count);
+    }
+
+    /** Return the distinct trigrams of the blob ID, in increasing order,
+     *  reading it as a stream and marking each trigram seen in a bit
+     *  set, so that memory use does not depend on the size of the blob.
+     * @param id
+     * @return trigrams as 24-bit ints
+     * */
+    static int[] trigrams(String id) {
+        BitSet seen = new BitSet();
+        try (InputStream in = ObjectStore.open(id, ObjectStore.BLOB)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int trigram = 0;
+            long count = 0;
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                for (int i = 0; i < n; i += 1) {
+                    trigram = (trigram << 8 | (buf[i] & 0xff)) & 0xffffff;
+                    count += 1;
+                    if (count >= 3) {
+                        seen.set(trigram);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read object %s: %s", id,
+                    excp.getMessage());
+        }
+        return seen.stream().toArray();
+    }
+
+    /** Give the blob ID the next number and return it. */
+    private int number(String id) {
+        _numbers.put(id, _blobs.size());
+        _blobs.add(id);
+        return _blobs.size() - 1;
+    }
+
+    /** Add ENTRY to the tail. */
+    private void append(long entry) {
+        if (_tailSize == _tail.length) {
+            _tail = Arrays.copyOf(_tail, Math.max(16, 2 * _tailSize));
+        }
+        _tail[_tailSize] = entry;
+        _tailSize += 1;
+    }
+
+    /** Merge the tail into the sorted run and write the whole file. */
+    private void rewrite() {
+        Arrays.sort(_tail, 0, _tailSize);
+        int count = _sorted.limit() + _tailSize;
+        long[] merged = new long[count];
+        int i = 0, j = 0;
+        for (int k = 0; k < count; k += 1) {
+            if (j == _tailSize
+                || i < _sorted.limit() && _sorted.get(i) <= _tail[j]) {
+                merged[k] = _sorted.get(i);
+                i += 1;
+            } else {
+                merged[k] = _tail[j];
+                j += 1;
+            }
+        }
+        _sorted = LongBuffer.wrap(merged);
+        _tail = new long[0];
+        _tailSize = 0;
+
+        File tmp = new File(INDEX_PATH + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(count);
+            for (long entry : merged) {
+                out.writeLong(entry);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write trigram index: %s",
+                    excp.getMessage());
+        }
+        Transaction.publish(tmp, new File(INDEX_PATH));
+    }
+}
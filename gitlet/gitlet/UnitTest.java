@@ -3,9 +3,21 @@ package gitlet;
 import ucb.junit.textui;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
 
 import static org.junit.Assert.*;
 
@@ -25,26 +37,17 @@ public class UnitTest {
     /** Path to the `.gitlet` folder */
     private static final String GITLET_PATH = CWD + ".gitlet/";
 
-    /** Path to the Gitlet object in `.gitlet` folder */
-    private static final String GITLET_OBJ_PATH = CWD + ".gitlet/gitlet";
-
-    /** Path to the folder that stores all the commits*/
-    private static final String COMMITS_PATH = CWD + ".gitlet/commits/";
-
     /** Path to the folder that stores all staged files. */
     private static final String STAGE_PATH = CWD + ".gitlet/stage/";
 
-    /** Path to the folder that stores all the blobs with ID as filename. */
-    private static final String BLOBS_PATH = CWD + ".gitlet/blobs/";
+    /** Path to the folder that stores all the objects with ID as filename. */
+    private static final String OBJECTS_PATH = CWD + ".gitlet/objects/";
 
     /** Path to the folder that stores all the test files. */
     private static final String TEST_FILE_PATH = "../testing/test_files";
 
-    private static final String INITIAL_COMMIT = "5b6d34fd772b5e3b663c90"
-            + "db766a54d42f9583a7";
-
-    private static final String TEST_COMMIT = "b28528bf639a6474f5f859b576"
-            + "d42935badeb88c";
+    private static final String INITIAL_COMMIT = "997d1a4ea4f38a1a0ad399"
+            + "4b2584953f995b8fe6";
 
     /** A dummy test to avoid complaint. */
     @Test
@@ -60,11 +63,11 @@ public class UnitTest {
 
         File gl = new File(GITLET_PATH);
         File stage = new File(STAGE_PATH);
-        File commits = new File(COMMITS_PATH);
+        File objects = new File(OBJECTS_PATH);
 
         assertTrue(gl.exists());
         assertTrue(stage.exists());
-        assertTrue(commits.exists());
+        assertTrue(objects.exists());
 
         Commit first = gitlet.loadCommit(INITIAL_COMMIT);
         assertEquals("initial commit", first.getMessage());
@@ -79,17 +82,17 @@ public class UnitTest {
 
         Gitlet gitlet = Main.initGitlet();
 
-        File gl = new File(GITLET_OBJ_PATH);
         File test = new File("test.txt");
         test.createNewFile();
         Utils.writeContents(test, "This is a test.");
 
         gitlet.add("test.txt");
 
-        gitlet = Utils.readObject(gl, Gitlet.class);
+        gitlet = new Gitlet();
         Stage stage = gitlet.getStageArea();
-        Blob b = stage.getBlob("test.txt");
-        assertEquals("This is a test.", b.getContent());
+        String id = stage.getID("test.txt");
+        assertTrue(ObjectStore.contains(id));
+        assertEquals("This is a test.", gitlet.getBlob(id).getContent());
 
         test.delete();
     }
@@ -113,22 +116,22 @@ public class UnitTest {
         }
 
         gitlet.commit("Testing `commit` command");
-        File gl = new File(GITLET_OBJ_PATH);
-        gitlet = Utils.readObject(gl, Gitlet.class);
-        assertEquals(TEST_COMMIT, gitlet.getHead().getID());
+        String head = gitlet.getHead().getID();
+        gitlet = new Gitlet();
+        assertEquals(head, gitlet.getHead().getID());
 
         for (String filename : fileNames) {
             Blob currBlob = new Blob(filename);
-            File currFile = new File(BLOBS_PATH + currBlob.getID());
+            File currFile = new File(OBJECTS_PATH + currBlob.getID());
             assertTrue(currFile.exists());
         }
 
-        File commitFile = new File(COMMITS_PATH + TEST_COMMIT);
-        Commit newCommit = Utils.readObject(commitFile, Commit.class);
+        Commit newCommit = gitlet.loadCommit(head);
 
         System.out.println("The commit time is:" + newCommit.getTimeAsString());
         assertEquals("Testing `commit` command", newCommit.getMessage());
-        assertEquals(TEST_COMMIT, newCommit.getID());
+        assertEquals(head, newCommit.getID());
+        assertEquals(head, newCommit.hash());
         assertEquals(INITIAL_COMMIT, newCommit.getParent());
         assertEquals("master", newCommit.getBranch());
 
@@ -138,10 +141,1025 @@ public class UnitTest {
         gitlet.globalLog();
     }
 
+    /** Test that objects are stored compressed and read back intact. */
+    @Test
+    public void objectStoreTest() throws IOException {
+        clean();
+
+        Main.initGitlet();
+
+        byte[] content = new byte[4096];
+        for (int i = 0; i < content.length; i += 1) {
+            content[i] = (byte) (i % 7 == 0 ? 0xff : 'a');
+        }
+        String id = ObjectStore.write(ObjectStore.BLOB, content);
+        assertEquals(ObjectStore.hash(ObjectStore.BLOB, content), id);
+        assertTrue(ObjectStore.contains(id));
+
+        File stored = new File(OBJECTS_PATH + id);
+        assertTrue(stored.length() < content.length);
+        assertArrayEquals(content, ObjectStore.read(id, ObjectStore.BLOB));
+
+        File work = new File("test.txt");
+        Utils.writeContents(work, "Work in progress.");
+        String missing = ObjectStore.hash(ObjectStore.BLOB, new byte[1]);
+        try {
+            ObjectStore.copyTo(missing, ObjectStore.BLOB, work);
+            fail("copied a missing object");
+        } catch (GitletException excp) {
+            assertEquals("Work in progress.",
+                    Utils.readContentsAsString(work));
+        }
+        ObjectStore.copyTo(id, ObjectStore.BLOB, work);
+        assertArrayEquals(content, Utils.readContents(work));
+        work.delete();
+
+        String huge = ObjectStore.hash(ObjectStore.BLOB, new byte[2]);
+        try (OutputStream out = new DeflaterOutputStream(
+                new FileOutputStream(OBJECTS_PATH + huge))) {
+            out.write(ObjectStore.header(ObjectStore.BLOB, 3L << 30));
+            out.write("a huge blob".getBytes());
+        }
+        try {
+            ObjectStore.read(huge, ObjectStore.BLOB);
+            fail("read a blob too large for an array");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().contains("too large"));
+        }
+        assertArrayEquals(TrigramIndex.trigrams("a huge blob".getBytes()),
+                TrigramIndex.trigrams(huge));
+    }
+
+    /** Test that commits read back from the compact encoding, and that
+     *  any other form is rejected as corrupt. */
+    @Test
+    public void commitFormatTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        Commit first = gitlet.getHead();
+        Commit copy = Commit.decode(first.encode());
+        assertEquals(first.getID(), copy.getID());
+        assertEquals(first.getMessage(), copy.getMessage());
+        assertEquals(first.getTime(), copy.getTime());
+        assertEquals(first.getTree(), copy.getTree());
+        assertNull(copy.getParent());
+        assertEquals(first.getTimeAsString(), copy.getTimeAsString());
+        try {
+            Commit.decode(Utils.serialize(first));
+            fail("decoded a commit in an unknown format");
+        } catch (GitletException excp) {
+            assertEquals("Commit is corrupt", excp.getMessage());
+        }
+        assertEquals(Commit.parseTime("1970-01-01T00:00"),
+                Commit.parseTime("1970-01-01"));
+        assertEquals(8 * 3600 * 1000, Commit.parseTime("1970-01-01"));
+    }
+
+    /** Test that `gc` packs loose objects and that they stay readable. */
+    @Test
+    public void gcTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        File test = new File("test.txt");
+        Utils.writeContents(test, "This is a test.");
+        gitlet.add("test.txt");
+        gitlet.commit("Packed commit");
+        String head = gitlet.getHead().getID();
+        String blobID = gitlet.getHead().getBlobs().get("test.txt");
+
+        gitlet.gc();
+
+        assertTrue(Utils.plainFilenamesIn(OBJECTS_PATH).isEmpty());
+        assertEquals(1, ObjectStore.list(ObjectStore.COMMIT).size() - 1);
+        assertEquals("Packed commit", gitlet.loadCommit(head).getMessage());
+        assertEquals(INITIAL_COMMIT, gitlet.loadCommit(head).getParent());
+        assertEquals("This is a test.", gitlet.getBlob(blobID).getContent());
+
+        byte[] big = new byte[17 << 20];
+        for (int i = 63; i < big.length; i += 64) {
+            big[i] = '\n';
+        }
+        ArrayList<String> bigIDs = new ArrayList<String>();
+        for (int v = 0; v < 2; v += 1) {
+            big[v] = 'x';
+            Utils.writeContents(test, big);
+            gitlet.add("test.txt");
+            gitlet.commit("Big version " + v);
+            bigIDs.add(gitlet.getHead().getBlobs().get("test.txt"));
+        }
+        gitlet.gc();
+        File[] packs = new File(OBJECTS_PATH, "pack").listFiles(
+            (dir, name) -> name.endsWith(".pack"));
+        assertEquals(1, packs.length);
+        PackFile pack = new PackFile(new File(packs[0].getPath()
+                .replace(".pack", ".idx")), packs[0]);
+        for (String id : bigIDs) {
+            assertFalse(pack.isDelta(pack.find(id)));
+        }
+        assertArrayEquals(big,
+                gitlet.getBlob(bigIDs.get(1)).getContentAsByte());
+
+        test.delete();
+    }
+
+    /** Test that `gc` stores successive versions of a file as deltas
+     *  that read back intact. */
+    @Test
+    public void deltaTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        File test = new File("test.txt");
+        ArrayList<String> versions = new ArrayList<String>();
+        ArrayList<String> ids = new ArrayList<String>();
+        long wholeSize = 0;
+        for (int v = 0; v < 20; v += 1) {
+            StringBuilder content = new StringBuilder();
+            for (int line = 0; line < 2000; line += 1) {
+                content.append(line == 50 * v ? "changed " + v
+                        : Integer.toHexString(line * 0x9e3779b1));
+                content.append("\n");
+            }
+            versions.add(content.toString());
+            Utils.writeContents(test, content.toString());
+            gitlet.add("test.txt");
+            gitlet.commit("Version " + v);
+            ids.add(gitlet.getHead().getBlobs().get("test.txt"));
+            wholeSize += new File(OBJECTS_PATH + ids.get(v)).length();
+        }
+
+        gitlet.gc();
+
+        long packSize = 0;
+        File pack = null;
+        for (File f : new File(OBJECTS_PATH, "pack").listFiles()) {
+            if (f.getName().endsWith(".pack")) {
+                packSize += f.length();
+                pack = f;
+            }
+        }
+        assertTrue(packSize < wholeSize / 3);
+        for (int v = 0; v < versions.size(); v += 1) {
+            assertEquals(versions.get(v),
+                    gitlet.getBlob(ids.get(v)).getContent());
+        }
+
+        File index = new File(pack.getPath().replace(".pack", ".idx"));
+        PackFile whole = new PackFile(index, pack);
+        PackFile windowed = new PackFile(index, pack, 64);
+        for (int pos = 0; pos < whole.size(); pos += 1) {
+            assertArrayEquals(whole.read(pos, whole.type(pos)),
+                    windowed.read(pos, windowed.type(pos)));
+        }
+
+        test.delete();
+    }
+
+    /** Test that Diff finds longest common subsequences, agreeing with
+     *  a dynamic program on small random inputs, and handles long files
+     *  with few changes quickly. */
+    @Test
+    public void diffTest() {
+        Diff diff = new Diff();
+        diff.setSequences(List.of("a", "b", "c", "d"),
+                List.of("a", "x", "c", "d", "e"));
+        assertArrayEquals(new int[] {0, 0, 1, 2, 2, 2},
+                diff.commonSubsequence());
+        assertArrayEquals(new int[] {1, 1, 1, 1, 4, 0, 4, 1}, diff.diffs());
+
+        Random random = new Random(61);
+        for (int trial = 0; trial < 200; trial += 1) {
+            List<String> one = randomLines(random), two = randomLines(random);
+            int[][] lls = new int[one.size() + 1][two.size() + 1];
+            for (int i = one.size() - 1; i >= 0; i -= 1) {
+                for (int j = two.size() - 1; j >= 0; j -= 1) {
+                    lls[i][j] = one.get(i).equals(two.get(j))
+                        ? lls[i + 1][j + 1] + 1
+                        : Math.max(lls[i + 1][j], lls[i][j + 1]);
+                }
+            }
+            diff.setSequences(one, two);
+            int[] common = diff.commonSubsequence();
+            int length = 0;
+            for (int k = 0; k < common.length; k += 3) {
+                for (int n = 0; n < common[k + 2]; n += 1) {
+                    assertEquals(one.get(common[k] + n),
+                            two.get(common[k + 1] + n));
+                }
+                length += common[k + 2];
+            }
+            assertEquals(lls[0][0], length);
+            assertEquals(lls[0][0], diff.lls());
+        }
+
+        ArrayList<String> base = new ArrayList<String>();
+        for (int line = 0; line < 200000; line += 1) {
+            base.add(Integer.toHexString(line * 0x9e3779b1));
+        }
+        ArrayList<String> target = new ArrayList<String>(base);
+        target.set(1000, "changed");
+        target.remove(150000);
+        target.add(190000, "added");
+        long start = System.nanoTime();
+        diff.setSequences(base, target);
+        assertArrayEquals(new int[] {1000, 1, 1000, 1, 150000, 1, 150000, 0,
+                                     190001, 0, 190000, 1}, diff.diffs());
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+
+        Collections.shuffle(target, random);
+        diff.setSequences(base, target);
+        diff.setEditLimit(100);
+        assertNull(diff.diffs());
+    }
+
+    /** Test that the patience and histogram algorithms anchor on rare
+     *  lines and always return a valid common subsequence. */
+    @Test
+    public void diffAlgorithmTest() {
+        Diff diff = new Diff();
+        List<String> one = List.of("u", "q", "q", "q");
+        List<String> two = List.of("q", "q", "q", "u");
+        diff.setSequences(one, two);
+        assertArrayEquals(new int[] {1, 0, 3}, diff.commonSubsequence());
+        for (Diff.Algorithm algorithm
+                 : List.of(Diff.Algorithm.PATIENCE, Diff.Algorithm.HISTOGRAM)) {
+            diff.setAlgorithm(algorithm);
+            diff.setSequences(one, two);
+            assertArrayEquals(new int[] {0, 3, 1}, diff.commonSubsequence());
+            assertEquals(3, diff.lls());
+
+            Random random = new Random(62);
+            for (int trial = 0; trial < 500; trial += 1) {
+                List<String> lines1 = randomLines(random);
+                List<String> lines2 = randomLines(random);
+                diff.setSequences(lines1, lines2);
+                int[] common = diff.commonSubsequence();
+                int end1 = 0, end2 = 0;
+                for (int k = 0; k < common.length; k += 3) {
+                    assertTrue(common[k] >= end1 && common[k + 1] >= end2);
+                    for (int n = 0; n < common[k + 2]; n += 1) {
+                        assertEquals(lines1.get(common[k] + n),
+                                lines2.get(common[k + 1] + n));
+                    }
+                    end1 = common[k] + common[k + 2];
+                    end2 = common[k + 1] + common[k + 2];
+                }
+            }
+        }
+    }
+
+    /** Test that PATIENCE and HISTOGRAM handle many separate edits
+     *  without deep recursion. */
+    @Test
+    public void diffManyEditsTest() throws IOException {
+        ArrayList<String> lines1 = new ArrayList<String>();
+        ArrayList<String> lines2 = new ArrayList<String>();
+        for (int i = 0; i < 10000; i += 1) {
+            lines1.add("same " + i + "\n");
+            lines2.add("same " + i + "\n");
+            lines1.add("old " + i + "\n");
+            lines2.add("new " + i + "\n");
+        }
+        Diff diff = new Diff();
+        for (Diff.Algorithm algorithm
+                 : List.of(Diff.Algorithm.PATIENCE, Diff.Algorithm.HISTOGRAM)) {
+            diff.setAlgorithm(algorithm);
+            diff.setSequences(lines1, lines2);
+            assertEquals(4 * 10000, diff.diffs().length);
+            assertEquals(10000, diff.lls());
+        }
+        StringWriter out = new StringWriter();
+        assertFalse(Diff3.merge(lines1, lines2, lines1, out));
+        assertEquals(String.join("", lines2), out.toString());
+    }
+
+    /** Test that a three-way merge applies changes to different lines
+     *  and marks only the lines that both sides changed differently. */
+    @Test
+    public void diff3Test() throws IOException {
+        List<String> base = Diff3.lines("a\nb\nc\nd\ne\nf\n");
+        StringWriter out = new StringWriter();
+        assertFalse(Diff3.merge(base, Diff3.lines("A\nb\nc\nd\ne\nf\n"),
+                Diff3.lines("a\nb\nc\nd\nE\nf\ng"), out));
+        assertEquals("A\nb\nc\nd\nE\nf\ng", out.toString());
+
+        out = new StringWriter();
+        assertFalse(Diff3.merge(base, Diff3.lines("a\nX\nc\nd\ne\nf\n"),
+                Diff3.lines("a\nX\nc\nd\ne\n"), out));
+        assertEquals("a\nX\nc\nd\ne\n", out.toString());
+
+        out = new StringWriter();
+        assertTrue(Diff3.merge(base, Diff3.lines("a\nb\nours\nd\nE\nf\n"),
+                Diff3.lines("A\nb\ntheirs\nd\ne\nf\n"), out));
+        assertEquals("A\nb\n<<<<<<< HEAD\nours\n=======\ntheirs\n"
+                + ">>>>>>>\nd\nE\nf\n", out.toString());
+
+        out = new StringWriter();
+        assertTrue(Diff3.merge(List.of(), Diff3.lines("one\n"),
+                Diff3.lines("two"), out));
+        assertEquals("<<<<<<< HEAD\none\n=======\ntwo>>>>>>>\n",
+                out.toString());
+    }
+
+    /** Test that merging binary files that both sides changed writes
+     *  both versions whole, byte for byte, between conflict markers,
+     *  and that text files are still merged line by line. */
+    @Test
+    public void binaryMergeTest() throws IOException {
+        byte[] ours = {1, 0, 2, '\n'};
+        byte[] theirs = {(byte) 0xc3, 0x28, '\n'};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(Diff3.merge("a\n".getBytes(), ours, theirs, out));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(Diff3.OURS_MARKER.getBytes());
+        expected.write(ours);
+        expected.write(Diff3.SEPARATOR.getBytes());
+        expected.write(theirs);
+        expected.write(Diff3.THEIRS_MARKER.getBytes());
+        assertArrayEquals(expected.toByteArray(), out.toByteArray());
+        assertNull(Diff3.text(ours));
+        assertNull(Diff3.text(theirs));
+
+        out = new ByteArrayOutputStream();
+        assertFalse(Diff3.merge("a\nb\nc\n".getBytes(),
+                "A\nb\nc\n".getBytes(),
+                "a\nb\nc\u00e9\n".getBytes(StandardCharsets.UTF_8), out));
+        assertEquals("A\nb\nc\u00e9\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    /** Return a short list of lines drawn from a small alphabet using
+     *  RANDOM. */
+    private static List<String> randomLines(Random random) {
+        ArrayList<String> result = new ArrayList<String>();
+        int size = random.nextInt(12);
+        for (int i = 0; i < size; i += 1) {
+            result.add(String.valueOf((char) ('a' + random.nextInt(4))));
+        }
+        return result;
+    }
+
+    /** Test that binary files survive add, commit and checkout. */
+    @Test
+    public void binaryCheckoutTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        File test = new File("test.txt");
+        byte[] content = new byte[200000];
+        for (int i = 0; i < content.length; i += 1) {
+            content[i] = (byte) (i * 31 + i / 256);
+        }
+        Utils.writeContents(test, content);
+        gitlet.add("test.txt");
+        gitlet.commit("Binary file");
+        Utils.writeContents(test, "overwritten");
+
+        gitlet.checkout(gitlet.getHead().getID(), "test.txt");
+
+        assertArrayEquals(content, Utils.readContents(test));
+        test.delete();
+    }
+
+    /** Test that the commit graph records parents and generations and
+     *  survives a reload. */
+    @Test
+    public void commitGraphTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        File test = new File("test.txt");
+        for (int i = 0; i < 3; i += 1) {
+            Utils.writeContents(test, "version " + i);
+            gitlet.add("test.txt");
+            gitlet.commit("Version " + i);
+        }
+
+        CommitGraph graph = CommitGraph.load();
+        assertEquals(4, graph.size());
+        int head = graph.position(gitlet.getHead().getID());
+        assertEquals(4, graph.generation(head));
+        int root = graph.parent(graph.parent(graph.parent(head)));
+        assertEquals(INITIAL_COMMIT, graph.id(root));
+        assertEquals(CommitGraph.NONE, graph.parent(root));
+        assertEquals(CommitGraph.NONE, graph.mergedParent(head));
+        assertEquals(gitlet.getHead().getTime().getTime(), graph.time(head));
+        test.delete();
+    }
+
+    /** Test merge bases, including the two bases of a criss-cross
+     *  merge. */
+    @Test
+    public void mergeBaseTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        HashMap<String, String> blobs = new HashMap<String, String>();
+        Commit a = new Commit("a", blobs, INITIAL_COMMIT, "master");
+        Commit b = new Commit("b", blobs, INITIAL_COMMIT, "other");
+        Commit m1 = new Commit("m1", blobs, a.getID(), "master");
+        m1.setMergedParent(b.getID());
+        Commit m2 = new Commit("m2", blobs, b.getID(), "other");
+        m2.setMergedParent(a.getID());
+        Commit c = new Commit("c", blobs, m1.getID(), "master");
+        for (Commit cm : new Commit[] {a, b, m1, m2, c}) {
+            gitlet.storeCommit(cm);
+        }
+
+        CommitGraph graph = gitlet.graph();
+        int pa = graph.position(a.getID());
+        int pb = graph.position(b.getID());
+        int pc = graph.position(c.getID());
+        int pm2 = graph.position(m2.getID());
+        ArrayList<Integer> bases = new MergeBase(graph).bases(pc, pm2);
+        assertEquals(2, bases.size());
+        assertTrue(bases.contains(pa) && bases.contains(pb));
+        int best = new MergeBase(graph).find(pc, pm2);
+        assertTrue(best == pa || best == pb);
+
+        assertEquals(pa, new MergeBase(graph).find(pc, pa));
+        assertEquals(graph.position(INITIAL_COMMIT),
+                new MergeBase(graph).find(pa, pb));
+        assertEquals(a.getID(), gitlet.findSplit(a, c).getID());
+    }
+
+    /** Test that abbreviated commit IDs resolve by prefix only. */
+    @Test
+    public void commitIndexTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        CommitIndex index = gitlet.commitIndex();
+        assertEquals(List.of(INITIAL_COMMIT), index.resolve("997d"));
+        assertEquals(List.of(INITIAL_COMMIT), index.resolve(INITIAL_COMMIT));
+        assertTrue(index.resolve("997").isEmpty());
+        assertTrue(index.resolve("1a4e").isEmpty());
+        assertTrue(index.resolve("zzzz").isEmpty());
+
+        HashMap<String, String> blobs = new HashMap<String, String>();
+        Commit last = null;
+        for (int i = 0; i < 300; i += 1) {
+            last = new Commit("c" + i, blobs, INITIAL_COMMIT, "master");
+            gitlet.storeCommit(last);
+        }
+        index = CommitIndex.load();
+        assertEquals(List.of(last.getID()),
+                index.resolve(last.getID().substring(0, 10)));
+        assertTrue(index.resolve(last.getID().substring(0, 1)
+                + "000").size() <= 1);
+    }
+
+    /** Test that the message index finds commits by message without
+     *  reading the others, across a rewrite of its sorted run, and that
+     *  the commit log and index are rebuilt when missing. */
+    @Test
+    public void messageIndexTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        HashMap<String, String> blobs = new HashMap<String, String>();
+        for (int i = 0; i < 1500; i += 1) {
+            gitlet.storeCommit(new Commit("Fix bug " + i, blobs,
+                    INITIAL_COMMIT, "master"));
+        }
+        gitlet.storeCommit(new Commit("!!", blobs, INITIAL_COMMIT,
+                "master"));
+        assertEquals(Set.of("fix", "bug", "7"),
+                MessageIndex.words("Fix: bug #7"));
+
+        for (int pass = 0; pass < 2; pass += 1) {
+            MessageIndex index = gitlet.messageIndex();
+            long[] offsets = index.candidates("Fix bug 700");
+            assertEquals(1, offsets.length);
+            assertEquals("Fix bug 700",
+                    gitlet.commitLog().read(offsets[0]).message());
+            assertEquals(1, index.candidates("!!").length);
+            assertEquals(0, index.candidates("Fix bug 1500").length);
+            ArrayList<String> messages = new ArrayList<String>();
+            gitlet.commitLog().scan(entry -> messages.add(entry.message()));
+            assertEquals(1502, messages.size());
+            assertEquals("initial commit", messages.get(0));
+
+            new File(CommitLog.LOG_PATH).delete();
+            gitlet = new Gitlet();
+        }
+    }
+
+    /** Test that the trigram index narrows the blobs to search, keeps
+     *  its contents across loads and indexes new blobs incrementally,
+     *  reading only the blobs logged since, not every loose object. */
+    @Test
+    public void trigramIndexTest() throws IOException {
+        clean();
+
+        Main.initGitlet();
+        assertArrayEquals(new int[] {0x616263, 0x626361, 0x636162},
+                TrigramIndex.trigrams("abcabc".getBytes()));
+        String wug = ObjectStore.write(ObjectStore.BLOB,
+                "This is a wug.".getBytes());
+        String notWug = ObjectStore.write(ObjectStore.BLOB,
+                "This is not a wug.".getBytes());
+        TrigramIndex index = TrigramIndex.load();
+        index.update();
+        assertEquals(List.of(notWug), index.candidates("not a".getBytes()));
+        assertEquals(2, index.candidates("wug".getBytes()).size());
+        assertEquals(2, index.candidates("a".getBytes()).size());
+        assertTrue(index.candidates("unicorn".getBytes()).isEmpty());
+
+        String unicorn = ObjectStore.write(ObjectStore.BLOB,
+                "A unicorn.".getBytes());
+        Utils.writeContents(new File(OBJECTS_PATH
+                + ObjectStore.hash(ObjectStore.BLOB, new byte[1])), "junk");
+        index = TrigramIndex.load();
+        assertTrue(index.candidates("unicorn".getBytes()).isEmpty());
+        index.update();
+        assertEquals(List.of(unicorn), index.candidates("unicorn".getBytes()));
+        assertEquals(Set.of(wug, notWug), Set.copyOf(
+                TrigramIndex.load().candidates("wug".getBytes())));
+        assertArrayEquals(TrigramIndex.trigrams("This is a wug.".getBytes()),
+                TrigramIndex.trigrams(wug));
+    }
+
+    /** Test that branches live in their own ref files and that a
+     *  reopened repository sees the moved refs and the saved stage. */
+    @Test
+    public void refsTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        assertEquals(List.of("master"), Refs.branches());
+        assertEquals(INITIAL_COMMIT, Refs.get("master"));
+
+        gitlet.branch("other");
+        assertEquals(List.of("master", "other"), Refs.branches());
+        File test = new File("test.txt");
+        Utils.writeContents(test, "This is a test.");
+        gitlet.add("test.txt");
+        gitlet.commit("On master");
+        String head = gitlet.getHead().getID();
+
+        gitlet = new Gitlet();
+        assertEquals("master", gitlet.getCurrBranch());
+        assertEquals(head, gitlet.getHead().getID());
+        assertEquals(INITIAL_COMMIT, Refs.get("other"));
+        assertTrue(gitlet.getStageArea().isEmpty());
+
+        gitlet.removeBranch("other");
+        assertFalse(Refs.exists("other"));
+        assertNull(Refs.get("other"));
+        test.delete();
+    }
+
+    /** Test that objects and refs written in a transaction are readable
+     *  but not named until it is synced, that those written since a mark
+     *  are dropped on rollback, and that all are dropped on abort. */
+    @Test
+    public void transactionTest() throws IOException {
+        clean();
+
+        Main.initGitlet();
+        Transaction.begin();
+        try {
+            String id = ObjectStore.write(ObjectStore.BLOB,
+                    "pending".getBytes());
+            assertFalse(new File(OBJECTS_PATH + id).exists());
+            assertTrue(ObjectStore.contains(id));
+            assertTrue(ObjectStore.list(ObjectStore.BLOB).contains(id));
+            assertArrayEquals("pending".getBytes(),
+                    ObjectStore.read(id, ObjectStore.BLOB));
+
+            Refs.set("other", INITIAL_COMMIT);
+            assertFalse(new File(Refs.HEADS_PATH + "other").exists());
+            assertEquals(INITIAL_COMMIT, Refs.get("other"));
+            assertEquals(List.of("master", "other"), Refs.branches());
+
+            Transaction.sync();
+            assertTrue(new File(OBJECTS_PATH + id).isFile());
+            assertTrue(new File(Refs.HEADS_PATH + "other").isFile());
+            assertEquals(INITIAL_COMMIT, Refs.get("other"));
+
+            String kept = ObjectStore.write(ObjectStore.BLOB,
+                    "kept".getBytes());
+            Transaction.Mark mark = Transaction.mark();
+            String undone = ObjectStore.write(ObjectStore.BLOB,
+                    "undone".getBytes());
+            Refs.set("undone", INITIAL_COMMIT);
+            Transaction.rollback(mark);
+            assertTrue(ObjectStore.contains(kept));
+            assertFalse(ObjectStore.contains(undone));
+            assertFalse(Refs.exists("undone"));
+            assertEquals(INITIAL_COMMIT, Refs.get("other"));
+
+            String dropped = ObjectStore.write(ObjectStore.BLOB,
+                    "dropped".getBytes());
+            Transaction.abort();
+            assertFalse(new File(OBJECTS_PATH + dropped).exists());
+            assertFalse(ObjectStore.contains(dropped));
+        } finally {
+            Transaction.abort();
+        }
+    }
+
+    /** Test that the objects of a command are synced as one pack, so
+     *  that adding many files costs no more syncs than adding two, and
+     *  that small packs are folded together as they accumulate. */
+    @Test
+    public void syncCostTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        List<String> loose = Utils.plainFilenamesIn(OBJECTS_PATH);
+        int[] costs = new int[2];
+        int[] sizes = {2, 20};
+        for (int i = 0; i < sizes.length; i += 1) {
+            Transaction.begin();
+            try {
+                for (int k = 0; k < sizes[i]; k += 1) {
+                    Utils.writeContents(new File("sync" + k + ".txt"),
+                            "file " + k + " of " + sizes[i]);
+                    gitlet.add("sync" + k + ".txt");
+                }
+                gitlet.update();
+                int before = Transaction.syncs();
+                Transaction.commit();
+                costs[i] = Transaction.syncs() - before;
+            } finally {
+                Transaction.abort();
+            }
+        }
+        assertEquals(costs[0], costs[1]);
+        assertTrue(costs[1] <= 6);
+        assertEquals(loose, Utils.plainFilenamesIn(OBJECTS_PATH));
+
+        for (int i = 0; i < 30; i += 1) {
+            Transaction.begin();
+            try {
+                Utils.writeContents(new File("sync0.txt"), "version " + i);
+                gitlet.add("sync0.txt");
+                gitlet.commit("Version " + i);
+                Transaction.commit();
+            } finally {
+                Transaction.abort();
+            }
+        }
+        assertTrue(Utils.plainFilenamesIn(PackFile.PACK_PATH).size() <= 12);
+        gitlet = new Gitlet();
+        for (String id : ObjectStore.list(ObjectStore.COMMIT)) {
+            assertNotNull(gitlet.loadCommit(id));
+        }
+        for (int k = 0; k < sizes[1]; k += 1) {
+            new File("sync" + k + ".txt").delete();
+        }
+    }
+
+    /** Test that the stat cache trusts files older than its index file,
+     *  and treats files modified since as racy. */
+    @Test
+    public void statCacheTest() throws IOException {
+        clean();
+
+        Main.initGitlet();
+        File old = new File("test.txt");
+        Utils.writeContents(old, "Old file.");
+        old.setLastModified(System.currentTimeMillis() - 10000);
+        File racy = new File("test2.txt");
+        Utils.writeContents(racy, "Racy file.");
+        racy.setLastModified(System.currentTimeMillis() + 10000);
+        StatCache cache = StatCache.load();
+        String oldID = cache.idOf("test.txt");
+        cache.idOf("test2.txt");
+        cache.save();
+        assertFalse(new File(GITLET_PATH + "index.lock").exists());
+
+        cache = StatCache.load();
+        assertEquals(oldID, cache.lookup("test.txt"));
+        assertNull(cache.lookup("test2.txt"));
+        old.delete();
+        racy.delete();
+        clean();
+    }
+
+    /** Test that files appended to in place recover from an append cut
+     *  short by a crash: the commit graph and index drop the partial
+     *  record, and the commit log and message index are built again. */
+    @Test
+    public void tornTailTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        HashMap<String, String> blobs = new HashMap<String, String>();
+        for (String message : List.of("one", "two", "three")) {
+            gitlet.storeCommit(new Commit(message, blobs, INITIAL_COMMIT,
+                    "master"));
+        }
+        for (String name : List.of("commit-log", "commit-graph",
+                "commit-index", "message-index")) {
+            try (FileOutputStream out =
+                     new FileOutputStream(GITLET_PATH + name, true)) {
+                out.write(new byte[] {1, 2, 3});
+            }
+        }
+
+        gitlet = new Gitlet();
+        Commit four = new Commit("four", blobs, INITIAL_COMMIT, "master");
+        gitlet.storeCommit(four);
+        gitlet = new Gitlet();
+        ArrayList<String> messages = new ArrayList<String>();
+        gitlet.commitLog().scan(entry -> messages.add(entry.message()));
+        assertEquals(5, messages.size());
+        assertTrue(messages.containsAll(List.of("two", "four")));
+        long[] offsets = gitlet.messageIndex().candidates("four");
+        assertEquals(1, offsets.length);
+        assertEquals(four.getID(),
+                gitlet.commitLog().read(offsets[0]).id());
+        assertEquals(5, gitlet.graph().size());
+        assertTrue(gitlet.graph().position(four.getID()) >= 0);
+        assertEquals(List.of(four.getID()),
+                gitlet.commitIndex().resolve(four.getID()));
+    }
+
+    /** Test that the object filter holds every stored ID, is rebuilt
+     *  when missing, and lets a reverted file be added without its
+     *  blob being written again. */
+    @Test
+    public void objectFilterTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        ArrayList<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 100; i += 1) {
+            ids.add(ObjectStore.write(ObjectStore.BLOB,
+                    ("blob " + i).getBytes()));
+        }
+        ObjectFilter filter = ObjectFilter.load(List::of);
+        for (String id : ids) {
+            assertTrue(filter.mayContain(id));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i += 1) {
+            if (filter.mayContain(ObjectStore.hash(ObjectStore.BLOB,
+                    ("absent " + i).getBytes()))) {
+                falsePositives += 1;
+            }
+        }
+        assertTrue(falsePositives < 20);
+
+        new File(ObjectFilter.FILTER_PATH).delete();
+        filter = ObjectFilter.load(() -> ids);
+        for (String id : ids) {
+            assertTrue(filter.mayContain(id));
+        }
+
+        File test = new File("test.txt");
+        Utils.writeContents(test, "Version 1");
+        gitlet.add("test.txt");
+        gitlet.commit("Version 1");
+        String first = gitlet.getHead().getBlobs().get("test.txt");
+        Utils.writeContents(test, "Version 2");
+        gitlet.add("test.txt");
+        gitlet.commit("Version 2");
+        File stored = new File(OBJECTS_PATH + first);
+        stored.setLastModified(0);
+        Utils.writeContents(test, "Version 1");
+        gitlet.add("test.txt");
+        assertEquals(first, gitlet.getStageArea().getStageAdd()
+                .get("test.txt"));
+        assertEquals(0, stored.lastModified());
+        assertTrue(Utils.plainFilenamesIn(OBJECTS_PATH + "tmp/").isEmpty());
+        test.delete();
+    }
+
+    /** Test hex encoding, the shared SHA-1 digests, and a repository
+     *  that names its objects with SHA-256. */
+    @Test
+    public void hashingTest() throws IOException, InterruptedException {
+        assertEquals("00ff7f80", Utils.toHex(new byte[] {0, -1, 127, -128}));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+                Utils.sha1("abc"));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+                Utils.sha1("a", "bc".getBytes()));
+        assertEquals(Utils.sha1("abc"),
+                Hashing.hash("xabcx".getBytes(), 1, 3));
+        assertEquals(Utils.sha1("abc"),
+                Hashing.hash(ByteBuffer.wrap("xabcx".getBytes(), 1, 3)));
+        assertEquals(20, Hashing.idLength());
+        assertEquals(32, Hashing.Algorithm.SHA256.length());
+        assertEquals(Hashing.Algorithm.SHA256,
+                Hashing.Algorithm.forId("sha256"));
+        assertNull(Hashing.Algorithm.forId("md5"));
+
+        clean();
+        Main.initGitlet();
+        HashMap<String, String> blobs = new HashMap<String, String>();
+        Commit one = new Commit("same", blobs, INITIAL_COMMIT, "master");
+        assertEquals(one.getID(), one.hash());
+        Thread.sleep(2);
+        Commit two = new Commit("same", blobs, INITIAL_COMMIT, "master");
+        assertNotEquals(one.getID(), two.getID());
+        String single = two.getID();
+        two.setMergedParent(one.getID());
+        assertNotEquals(single, two.getID());
+        assertEquals(two.getID(), two.hash());
+
+        clean();
+        Gitlet gitlet = Main.initGitlet(Hashing.Algorithm.SHA256);
+        assertEquals(64, gitlet.getHead().getID().length());
+        File test = new File("test.txt");
+        Utils.writeContents(test, "This is a test.");
+        gitlet.add("test.txt");
+        gitlet.commit("Hashed with SHA-256");
+        String head = gitlet.getHead().getID();
+        String blobID = gitlet.getHead().getBlobs().get("test.txt");
+        assertEquals(64, blobID.length());
+        gitlet.gc();
+
+        ObjectStore.reload();
+        gitlet = new Gitlet();
+        assertEquals(Hashing.Algorithm.SHA256, Hashing.algorithm());
+        assertEquals(head, gitlet.getHead().getID());
+        assertEquals(List.of(head),
+                gitlet.commitIndex().resolve(head.substring(0, 8)));
+        assertEquals("This is a test.", gitlet.getBlob(blobID).getContent());
+        test.delete();
+        clean();
+    }
+
+    /** Test that the object cache evicts the least recently used
+     *  entries and that repeated reads are served from it. */
+    @Test
+    public void objectCacheTest() throws IOException {
+        ObjectCache<String> cache = new ObjectCache<String>(10);
+        cache.put("a", "a", 4);
+        cache.put("b", "b", 4);
+        assertEquals("a", cache.get("a"));
+        cache.put("c", "c", 4);
+        assertNull(cache.get("b"));
+        assertEquals("a", cache.get("a"));
+        assertEquals("c", cache.get("c"));
+        cache.put("d", "d", 11);
+        assertNull(cache.get("d"));
+        assertEquals(3, cache.hits());
+        assertEquals(2, cache.misses());
+
+        clean();
+        Main.initGitlet();
+        String id = ObjectStore.write(ObjectStore.BLOB,
+                "cached".getBytes());
+        ObjectCache<byte[]> objects = ObjectStore.cache();
+        ObjectStore.read(id, ObjectStore.BLOB);
+        long hits = objects.hits();
+        new File(OBJECTS_PATH + id).delete();
+        assertArrayEquals("cached".getBytes(),
+                ObjectStore.read(id, ObjectStore.BLOB));
+        assertEquals(hits + 1, objects.hits());
+    }
+
+    /** Test that a daemon runs forwarded commands, sends back their
+     *  output and keeps serving after a command fails. */
+    @Test
+    public void daemonTest() throws Exception {
+        clean();
+
+        Main.initGitlet();
+        assertFalse(Daemon.forward(new String[] {"status"},
+                new ByteArrayOutputStream()));
+        Thread daemon = new Thread(() -> {
+            try {
+                Daemon.serve();
+            } catch (IOException excp) {
+                throw new Error(excp);
+            }
+        });
+        daemon.setDaemon(true);
+        daemon.start();
+        while (!Daemon.forward(new String[] {"log"},
+                new ByteArrayOutputStream())) {
+            Thread.sleep(10);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(Daemon.forward(new String[] {"branch", "other"}, out));
+        assertEquals("", out.toString());
+        assertTrue(Refs.exists("other"));
+        out.reset();
+        Daemon.forward(new String[] {"rm-branch", "none"}, out);
+        assertEquals("A branch with that name does not exist."
+                + System.lineSeparator(), out.toString());
+        out.reset();
+        Daemon.forward(new String[] {"status"}, out);
+        assertTrue(out.toString().startsWith("=== Branches ==="));
+
+        File test = new File("test.txt");
+        Utils.writeContents(test, "Packed elsewhere.");
+        Daemon.forward(new String[] {"add", "test.txt"}, out);
+        Daemon.forward(new String[] {"commit", "Packed"}, out);
+        Process gc = new ProcessBuilder("java", "-cp",
+                System.getProperty("java.class.path"), "gitlet.Main",
+                "batch").start();
+        try (OutputStream script = gc.getOutputStream()) {
+            script.write("gc\n".getBytes());
+        }
+        assertEquals(0, gc.waitFor());
+        assertTrue(Utils.plainFilenamesIn(OBJECTS_PATH).isEmpty());
+        Utils.writeContents(test, "Changed.");
+        out.reset();
+        Daemon.forward(new String[] {"checkout", "--", "test.txt"}, out);
+        assertEquals("", out.toString());
+        assertEquals("Packed elsewhere.", Utils.readContentsAsString(test));
+        test.delete();
+
+        File stage = new File(STAGE_PATH + "index");
+        byte[] saved = Utils.readContents(stage);
+        Utils.writeContents(stage, "junk");
+        out.reset();
+        Daemon.forward(new String[] {"status"}, out);
+        assertTrue(out.toString().endsWith(System.lineSeparator()));
+        assertTrue(out.toString().lines().reduce((a, b) -> b).get()
+                .startsWith("Internal error: "));
+        assertTrue(out.toString().lines().noneMatch(
+                line -> line.startsWith("\tat ")));
+        Utils.writeContents(stage, saved);
+        out.reset();
+        Daemon.forward(new String[] {"status"}, out);
+        assertTrue(out.toString().startsWith("=== Branches ==="));
+
+        Daemon.stop();
+        daemon.join();
+        assertFalse(Daemon.SOCKET_PATH.toFile().exists());
+        assertFalse(Daemon.forward(new String[] {"status"}, out));
+        clean();
+    }
+
+    /** Test that adding a directory stages every file under it, and
+     *  only the files that changed. */
+    @Test
+    public void addDirectoryTest() throws IOException {
+        clean();
+
+        Gitlet gitlet = Main.initGitlet();
+        File dir = new File("addtest");
+        new File(dir, "sub").mkdirs();
+        for (int i = 0; i < 50; i += 1) {
+            Utils.writeContents(new File(dir, (i % 2 == 0 ? "sub/" : "")
+                    + "f" + i + ".txt"), "file " + i);
+        }
+        gitlet.add("addtest");
+        HashMap<String, String> staged = gitlet.getStageArea().getStageAdd();
+        assertEquals(50, staged.size());
+        assertEquals(ObjectStore.hash(ObjectStore.BLOB, "file 4".getBytes()),
+                staged.get("addtest/sub/f4.txt"));
+        assertEquals("file 7",
+                gitlet.getBlob(staged.get("addtest/f7.txt")).getContent());
+
+        gitlet.commit("Fifty files");
+        Utils.writeContents(new File(dir, "f7.txt"), "changed");
+        gitlet.add("addtest/");
+        assertEquals(List.of("addtest/f7.txt"), new ArrayList<String>(
+                gitlet.getStageArea().getStageAdd().keySet()));
+        deleteFolder(dir);
+    }
+
+    /** Test that trees round-trip, share unchanged directories and
+     *  diff by path. */
+    @Test
+    public void treeTest() throws IOException {
+        clean();
+
+        Main.initGitlet();
+        String x = ObjectStore.hash(ObjectStore.BLOB, "x".getBytes());
+        String y = ObjectStore.hash(ObjectStore.BLOB, "y".getBytes());
+        HashMap<String, String> blobs = new HashMap<String, String>();
+        blobs.put("a.txt", x);
+        blobs.put("d/b.txt", y);
+        blobs.put("d/e/c.txt", x);
+        blobs.put("f/g.txt", x);
+        String one = Tree.write(blobs);
+        assertEquals(blobs, Tree.files(one));
+        int trees = ObjectStore.list(ObjectStore.TREE).size();
+
+        HashMap<String, String> changed = new HashMap<String, String>(blobs);
+        changed.remove("a.txt");
+        changed.put("f/g.txt", y);
+        changed.put("f/h/i.txt", y);
+        String two = Tree.write(changed);
+        assertEquals(trees + 3, ObjectStore.list(ObjectStore.TREE).size());
+
+        HashMap<String, String> diff = new HashMap<String, String>();
+        diff.put("a.txt", null);
+        diff.put("f/g.txt", y);
+        diff.put("f/h/i.txt", y);
+        assertEquals(diff, Tree.diff(one, two));
+        assertTrue(Tree.diff(two, two).isEmpty());
+        assertEquals(one, Tree.write(blobs));
+    }
+
     /** Util method to clean up all the folders and files created via `init`*/
     public void clean() {
         File gl = new File(GITLET_PATH);
         deleteFolder(gl);
+        ObjectStore.reload();
     }
 
     boolean deleteFolder(File folder) {